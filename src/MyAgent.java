@@ -6,14 +6,21 @@ import java.util.List;
 import agents.ArtificialAgent;
 import astar.AStar;
 import astar.AStarProblem;
+import astar.BoardAStar;
 import astar.BoardCustom;
+import astar.HDAStar;
 import astar.actions.TAction;
+import astar.detectors.DeadlockPipeline;
 import astar.search.Solution;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 
 
 public class MyAgent extends ArtificialAgent {
+	// ARA* weights when optimal solutions are not required
+	private static final double INITIAL_WEIGHT = 3.0;
+	private static final double WEIGHT_STEP = 0.5;
+
 	protected BoardCustom board;
 	protected int searchedNodes;
 
@@ -21,17 +28,43 @@ public class MyAgent extends ArtificialAgent {
 	protected List<EDirection> think(BoardCompact boardCompact) {
 		this.board = new BoardCustom(boardCompact);
 		searchedNodes = 0;
+		// per-stage deadlock statistics cost time, only gather them when they are printed
+		DeadlockPipeline.setStatisticsEnabled(verbose);
+		DeadlockPipeline.resetStatistics();
+		long setupStartMillis = System.currentTimeMillis();
+		// Push-optimal search over canonical states unless move-optimal solutions are required
+		AStarProblem problem = new AStarProblem(this.board, boardCompact, !optimal);
 		long searchStartMillis = System.currentTimeMillis();
 
-		// Execute A*
-		AStarProblem problem = new AStarProblem(this.board, boardCompact);
-		Solution<BoardCustom, TAction> solution = AStar.search(problem);
+		Solution<BoardCustom, TAction> solution;
+		List<TAction> actions;
+		boolean outOfTime = false;
+		if (optimal) {
+			// Execute A*, hash-distributed over all cores when there is more than one
+			int threads = Runtime.getRuntime().availableProcessors();
+			solution = threads > 1 ? HDAStar.search(problem, threads) : BoardAStar.search(problem);
+			actions = solution == null ? null : solution.actions;
+		} else {
+			// Anytime search (ARA*): best plan found within the time budget; goal rooms are filled in a fixed order,
+			// boxes walling in empty targets are penalised
+			problem.setGoalRoomMacros(true);
+			problem.setPackingPenalty(true);
+			long budget = getSearchBudget(setupStartMillis);
+			long anytimeStartMillis = System.currentTimeMillis();
+			solution = AStar.searchAnytime(problem, INITIAL_WEIGHT, WEIGHT_STEP, budget,
+			                               (s, bound) -> { if (verbose) out.printf("Solution cost %.0f, bound %.2f\n", s.pathCost, bound); });
+			actions = solution == null ? null : problem.toPlayable(solution.actions);
+			outOfTime = solution == null && budget > 0 && System.currentTimeMillis() - anytimeStartMillis >= budget;
+		}
 		
 		List<EDirection> result = new ArrayList<>();
 		if (solution == null) {
+			// the budget ran out before a first plan or the agent was stopped (searches give up when interrupted):
+			// a failed level, not a level without solution
+			if (outOfTime || Thread.currentThread().isInterrupted()) return null;
 			throw new Error("[MyAgent] No solution found! Steps: " + searchedNodes);
 		}
-		for (TAction a : solution.actions) {
+		for (TAction a : actions) {
 			result.addAll(new ArrayList<>(Arrays.asList(a.getDirections())));
 		}
 
@@ -41,16 +74,19 @@ public class MyAgent extends ArtificialAgent {
         
         if (verbose) {
             out.println("Nodes visited: " + searchedNodes);
-			// out.println("Frozen deadlocks avoided: " + DeadSquareDetector.frozenDeadlockCount);
-			// out.println("Frozen deadlock calls: " + DeadSquareDetector.frozenDeadlockCallsCount);
-			// out.printf("Frozen deadlock search time: %.1f ms\n", (double)DeadSquareDetector.frozenDeadlockSearchTime);
-			// out.println("Bipartite deadlocks avoided: " + DeadSquareDetector.bipartiteDeadlockCount);
-			// out.println("Bipartite deadlock calls: " + DeadSquareDetector.bipartiteDeadlockCallsCount);
-			// out.printf("Bipartite deadlock search time: %.1f ms\n", (double)DeadSquareDetector.bipartiteDeadlockSearchTime);
+            out.printf("Setup time: %d ms\n", searchStartMillis - setupStartMillis);
+			DeadlockPipeline.printStatistics(out);
             out.printf("Performance: %.1f nodes/sec\n",
                         ((double)searchedNodes / (double)searchTime * 1000));
         }
 		
 		return result.isEmpty() ? null : result;
 	}
+
+	// Time left for the search, keeping a tenth of the timeout (at least 100 ms) for replanning walks and playing the moves
+	private long getSearchBudget(long startMillis) {
+		if (timeoutMillis <= 0) return 0;
+		long left = timeoutMillis - (System.currentTimeMillis() - startMillis) - Math.max(100, timeoutMillis / 10);
+		return Math.max(1, left);
+	}
 }
\ No newline at end of file
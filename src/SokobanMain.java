@@ -18,7 +18,7 @@ public class SokobanMain {
         IAgent agent, String agentId, String levelset, int level,
         String resultDir, int timeout, boolean verbose, boolean optimal) {
 
-        agent.init(optimal, verbose);
+        agent.init(optimal, verbose, timeout);
 
         if (verbose)
             System.out.println("====================");
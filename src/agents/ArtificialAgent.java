@@ -6,75 +6,136 @@ import game.IAgent;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 
+/**
+ * Agent that plans in {@link #think(BoardCompact)} on its own {@link ThinkThread} and then plays the plan.
+ * <p>
+ * The hand-off goes through 'mutex' as a condition variable: {@link #act()} wakes the think thread as soon as the
+ * plan runs out, the think thread wakes callers blocked in {@link #act(long)} once the plan is there.
+ * <p>
+ * The plan is a queue, so it can be streamed: {@link #emit(EDirection)} called from {@link #think(BoardCompact)}
+ * hands out moves the agent is sure of right away, and they are played while it keeps thinking. The plan
+ * {@link #think(BoardCompact)} returns then goes on from where the emitted moves leave the board.
+ */
 public abstract class ArtificialAgent implements IAgent {
 
-	private List<EDirection> actions;
-	
+	private final ArrayDeque<EDirection> actions = new ArrayDeque<EDirection>();
+
 	private BoardCompact board;
-		
+
 	private ThinkThread thread;
-	
+
 	private Object mutex = new Object();
-	
+
     private RuntimeException agentException;
-    
+
     protected boolean optimal, verbose;
 
+    protected long timeoutMillis; // non-positive == no timeout
+
     @Override
-    public void init(boolean optimal, boolean verbose) {
+    public void init(boolean optimal, boolean verbose, long timeoutMillis) {
         this.optimal = optimal;
         this.verbose = verbose;
+        this.timeoutMillis = timeoutMillis;
     }
 
 	@Override
 	public void newLevel() {
-		actions = null;
-		board = null;
-		agentException = null;
+		synchronized(mutex) {
+			actions.clear();
+			board = null;
+			agentException = null;
+		}
 	}
 
 	@Override
 	public void observe(BoardCompact board) {
-		this.board = board;
+		synchronized(mutex) {
+			this.board = board;
+		}
 	}
 
 	@Override
 	public EDirection act() {
+		synchronized(mutex) {
+			return nextAction();
+		}
+	}
+
+	@Override
+	public EDirection act(long waitMillis) throws InterruptedException {
+		long deadline = waitMillis > 0 ? System.currentTimeMillis() + waitMillis : Long.MAX_VALUE;
+		synchronized(mutex) {
+			EDirection result;
+			while ((result = nextAction()) == null) {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) return null;
+				mutex.wait(deadline == Long.MAX_VALUE ? 0 : left);
+			}
+			return result;
+		}
+	}
+
+	// Pops the next action of the plan, or has the think thread start planning and returns null; holding 'mutex'
+	private EDirection nextAction() {
+		if (agentException != null) {
+			throw agentException;
+		}
 		// HAVE ACTION?
-		if (actions != null && actions.size() != 0) {
+		if (!actions.isEmpty()) {
 			// => EXECUTE
-			return actions.remove(0);
+			return actions.poll();
 		}
-		
 		// OTHERWISE THINK!
-		synchronized(mutex) {
-			if (agentException != null) {
-				throw agentException;
-			}
-			ensureThinkThread();
-			if (actions == null || actions.size() == 0) {
-				thread.think = true;
-			}
-			if (actions != null && actions.size() != 0) {
-				// => EXECUTE
-				return actions.remove(0);
-			}
+		ensureThinkThread();
+		if (!thread.think) {
+			thread.think = true;
+			mutex.notifyAll();
 		}
 		return null;
 	}
-	
+
+	/**
+	 * Plans from 'board'; called on the {@link ThinkThread}.
+	 * @param board
+	 * @return the plan after any moves already {@link #emit(EDirection) emitted}; null if there is none
+	 */
 	protected abstract List<EDirection> think(final BoardCompact board);
 
+	/**
+	 * Appends a move to the plan while still thinking, it is played right away; call from {@link #think(BoardCompact)} only.
+	 * @param direction
+	 */
+	protected void emit(EDirection direction) {
+		synchronized(mutex) {
+			if (Thread.currentThread() != thread) return; // think thread stopped meanwhile
+			actions.add(direction);
+			mutex.notifyAll();
+		}
+	}
+
+	/**
+	 * {@link #emit(EDirection)} of several moves.
+	 * @param directions
+	 */
+	protected void emit(Collection<EDirection> directions) {
+		synchronized(mutex) {
+			if (Thread.currentThread() != thread) return;
+			actions.addAll(directions);
+			mutex.notifyAll();
+		}
+	}
+
 	@Override
 	public void victory() {
-		stopThinkThread();		
+		stopThinkThread();
 	}
-	
+
 	@Override
 	public void stop() {
 		stopThinkThread();
 	}
-	
+
 	private void ensureThinkThread() {
 		synchronized(mutex) {
 			if (thread != null && thread.running) return;
@@ -82,63 +143,70 @@ public abstract class ArtificialAgent implements IAgent {
 			thread.start();
 		}
 	}
-	
+
 	private void stopThinkThread() {
 		synchronized(mutex) {
 			if (thread != null) {
 				thread.shouldRun = false;
 				thread.interrupt();
 				thread = null;
+				mutex.notifyAll();
 			}
 		}
 	}
-	
+
 	protected class ThinkThread extends Thread {
-		
-		public boolean running = true;
-		
-		public boolean shouldRun = true;
-		
+
+		public volatile boolean running = true;
+
+		public volatile boolean shouldRun = true;
+
+		/**
+		 * Set (holding 'mutex', which is then notified) when a plan is wanted; cleared when it is delivered.
+		 */
 		public boolean think = false;
-		
+
 		public ThinkThread() {
 			super("ThinkThread");
 		}
-		
+
 		@Override
 		public void run() {
 			try {
 				while (shouldRun && !interrupted()) {
-					while (!think) {
-						try {
-							Thread.sleep(50);
-						} catch (Exception e) {
-							throw new RuntimeException("Interrupted on sleep");
+					BoardCompact thinkBoard;
+					synchronized(mutex) {
+						while (!think) {
+							if (!shouldRun) return;
+							mutex.wait();
 						}
+						thinkBoard = board;
 					}
-					List<EDirection> thinkActions = think(board);
+					List<EDirection> thinkActions = think(thinkBoard);
 					synchronized(mutex) {
 						if (ArtificialAgent.this.thread == this) {
                             if (thinkActions != null)
-                                actions = thinkActions;
-                            else {
-                                actions = new ArrayList<EDirection>();
+                                actions.addAll(thinkActions);
+                            else
                                 actions.add(EDirection.NONE);
-                            }
 						}
 						think = false;
+						mutex.notifyAll();
 					}
 				}
+			} catch (InterruptedException e) {
+				// stopped while waiting for work
 			} catch (Exception e) {
 				synchronized(mutex) {
 					agentException = new RuntimeException("ThinkThread failed.", e);
+					mutex.notifyAll();
 				}
 			} finally {
 				running = false;
 			}
 		}
-		
+
 	}
 
-	
+
 }
@@ -69,6 +69,7 @@ public class DFS2Agent extends ArtificialAgent {
 
 	private boolean dfs(int level, EDirection previousMove) {
 		if (level <= 0) return false; // DEPTH-LIMITED
+		if (Thread.currentThread().isInterrupted()) return false; // STOPPED
 		
 		++searchedNodes;
 		
@@ -1,66 +1,118 @@
 package agents;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import game.actions.EDirection;
 import game.actions.compact.CAction;
 import game.actions.compact.CMove;
 import game.actions.compact.CPush;
+import game.actions.oop.EActionType;
 import game.board.compact.BoardCompact;
 
 /**
- * Multi-threaded version of {@link DFS1Agent}
+ * Multi-threaded version of {@link DFS1Agent} on a {@link ForkJoinPool}.
+ * <p>
+ * The search runs as {@link DFSTask}s; a task searches its subtree depth-first on its own board and splits a node
+ * into one subtask per action (each on a clone of the board) while the pool is short of queued work and enough depth
+ * is left. Idle workers steal the subtasks, so no core waits for a sibling subtree to finish. Every node checks the
+ * shared {@link #cancelled} flag, which is raised by the first solution found and by {@link #stop()}.
+ * <p>
+ * All tasks share a {@link TranspositionTable}; a state some task has already searched (or is searching) at least as
+ * deep is cut off, so no subtree is searched twice by different workers.
+ *
  * @author Jimmy
  */
 public class MTDFS1Agent extends ArtificialAgent {
 
+	/**
+	 * Split a node only while fewer tasks than this are queued in the current worker beyond what idle workers need.
+	 */
+	protected static final int SURPLUS_TASKS = 2;
+
+	/**
+	 * Do not split nodes with less depth left than this, their subtrees are cheaper than the tasks.
+	 */
+	protected static final int MIN_SPLIT_LEVEL = 6;
+
+	/**
+	 * log2 of the transposition table entries (8 bytes each).
+	 */
+	protected static final int TABLE_BITS = 22;
+
+	protected final int searchLevel;
+
+	protected final int parallelism;
+
 	protected BoardCompact board;
 
-	protected Object solutionFoundMutex = new Object();
-	
+	protected boolean transpositions = true;
+
 	/**
-	 * Here we will mark the fact that some {@link DFS1Thread} found a solution.
+	 * Shared by all tasks of the current search; null if {@link #transpositions} are off.
 	 */
-	protected boolean solutionFound = false;
+	protected TranspositionTable table;
+
+	/**
+	 * Raised when some {@link DFSTask} found a solution or the agent is stopped; all tasks finish as soon as they see it.
+	 */
+	protected volatile boolean cancelled = false;
 
 	/**
 	 * Profiling ... how many nodes we have managed to search.
 	 */
 	protected AtomicInteger searchedNodes = new AtomicInteger();
-	
+
+	public MTDFS1Agent() {
+		this(15);
+	}
+
+	public MTDFS1Agent(int searchLevel) {
+		this(searchLevel, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param searchLevel how deep we will search (the longest plan we will consider)
+	 * @param parallelism worker threads of the pool
+	 */
+	public MTDFS1Agent(int searchLevel, int parallelism) {
+		this.searchLevel = searchLevel;
+		this.parallelism = parallelism;
+	}
+
+	public void setTranspositions(boolean enabled) {
+		this.transpositions = enabled;
+	}
+
 	@Override
 	protected List<EDirection> think(BoardCompact board) {
 		// INIT SEARCH
 		this.board = board;
-		this.solutionFound = false;
+		this.cancelled = false;
 		this.searchedNodes.set(0);
-		
-		// SEARCH CONFIGURATION
-		int spareThreads = 8;
-		int searchLevel = 15;
-		
+		this.table = transpositions ? new TranspositionTable(board, TABLE_BITS) : null;
+
 		// FIRE THE SEARCH
-				
+
 		long searchStartMillis = System.currentTimeMillis();
-		
-		DFS1Thread rootThread = new DFS1Thread(board, searchLevel, spareThreads-1);
-		rootThread.start();
+
+		List<EDirection> result;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
 		try {
-			rootThread.join();
-		} catch (InterruptedException e) {
-			throw new RuntimeException("Interrupted on rootThread.join()", e);
+			long key = table == null ? 0 : table.key(board);
+			result = pool.invoke(new DFSTask(board.clone(), key, searchLevel, EDirection.NONE));
+		} finally {
+			pool.shutdownNow();
+			table = null;
 		}
-		
-		List<EDirection> result;
-		if (rootThread.solutionFound) result = rootThread.result;
-		else result = new ArrayList<EDirection>();
-				
+		if (result == null) result = new ArrayList<EDirection>();
+
 		long searchTime = System.currentTimeMillis() - searchStartMillis;
-        
+
         if (verbose) {
             System.out.println("SEARCH TOOK:   " + searchTime + " ms");
             System.out.println("NODES VISITED: " + searchedNodes);
@@ -75,209 +127,160 @@ public class MTDFS1Agent extends ArtificialAgent {
             }
             System.out.println("=================");
         }
-		
+
 		if (result.size() == 0) {
             return null;
 		}
-				
+
 		return result;
 	}
 
-	public class DFS1Thread extends Thread {
-		
-		public List<EDirection> preActions = new ArrayList<EDirection>();
-		
-		public List<EDirection> result = new ArrayList<EDirection>();
-		
-		public BoardCompact board;
-		
-		public boolean solutionFound = false;
-
-		private int level;
-
-		private int spareThreads;
-		
-		public DFS1Thread(BoardCompact board, int level, int spareThreads) {
-			super("DFSThread");
+	@Override
+	public void stop() {
+		cancelled = true;
+		super.stop();
+	}
+
+	/**
+	 * Actions to try in a node, in order.
+	 * @param board
+	 * @param previousMove direction of the move that led here, {@link EDirection#NONE} after a push
+	 * @param actions output
+	 */
+	protected void collectActions(BoardCompact board, EDirection previousMove, List<CAction> actions) {
+		for (CMove move : CMove.getActions()) {
+			if (move.isPossible(board)) {
+				actions.add(move);
+			}
+		}
+		for (CPush push : CPush.getActions()) {
+			if (push.isPossible(board)) {
+				actions.add(push);
+			}
+		}
+	}
+
+	/**
+	 * Direction of the move 'action' for the next {@link #collectActions(BoardCompact, EDirection, List)}.
+	 * @param action
+	 * @return
+	 */
+	protected EDirection previousMove(CAction action) {
+		return EDirection.NONE;
+	}
+
+	/**
+	 * Searches the subtree of its board; the result is the path to the solution or null.
+	 */
+	public class DFSTask extends RecursiveTask<List<EDirection>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BoardCompact board;
+
+		private long key; // of 'board' in the transposition table
+
+		private final int level;
+
+		private final EDirection previousMove;
+
+		private final List<EDirection> result = new ArrayList<EDirection>();
+
+		public DFSTask(BoardCompact board, long key, int level, EDirection previousMove) {
 			this.board = board;
+			this.key = key;
 			this.level = level;
-			this.spareThreads = spareThreads;
+			this.previousMove = previousMove;
 		}
-		
+
 		@Override
-		public void run() {
-			if (level <= 0) return; // DEPTH-LIMITED
-			if (MTDFS1Agent.this.solutionFound) return; // SOLUTION ALREADY FOUND IN DIFFERENT THREAD
-			
-			if (spareThreads == 0) {
-				// no more thread branching ...
-				dfs(level);
-				return;
-			}
-			
-			List<CAction> actions = new ArrayList<CAction>(4);
-			
-			// cutoff "single action option"
-			while (true) {
-			
-				for (CMove move : CMove.getActions()) {
-					if (move.isPossible(board)) {
-						actions.add(move);
-					}
-				}
-				for (CPush push : CPush.getActions()) {
-					if (push.isPossible(board)) {
-						actions.add(push);
-					}
-				}
-			
-				if (actions.size() == 1) {
-					this.preActions.add(actions.get(0).getDirection());
-					actions.get(0).perform(board);
-				} else {
-					break;
-				}
-				
-			}
-			
-			// WE HAVE MORE THAN 1 ACTION TO CHOOSE FROM ...
-			
-			Map<DFS1Thread, EDirection> threads = new HashMap<DFS1Thread, EDirection>();
-			
-			// LAUNCH SPARE THREADS, leave some action to be investigated by this thread
-			while (spareThreads > 0 && actions.size() > 1) {
-				EDirection dir = actions.get(0).getDirection();
-				BoardCompact threadBoard = board.clone();
-				actions.get(0).perform(threadBoard);
-				
-				int nextSpareThreads;
-				// DECIDE ON NUMBER OF THREADS GIVEN TO THE NEXT DFSThread TO USE
-				if      (actions.size() == 2) nextSpareThreads = spareThreads-1;
-				else if (spareThreads > 2)    nextSpareThreads = 1;
-				else                          nextSpareThreads = 0;
-				
-				DFS1Thread thread = new DFS1Thread(threadBoard, level-1, nextSpareThreads);
-				
-				thread.start();
-				threads.put(thread, dir);
-				
-				// PREPARE NEXT ITERATION
-				spareThreads = spareThreads - 1 - nextSpareThreads;
-				actions.remove(0);
-			}
-			
-			// DFS THE REST OF ACTIONS
-			dfs(actions, level);
-			
-			if (solutionFound) {
-				// SOLUTION FOUND HERE...
-				preActions.addAll(result);
-				result = preActions;
-				return;
-			} else {
-				// JOIN ON THREADS
-				for (DFS1Thread thread : threads.keySet()) {
-					try {
-						thread.join();
-					} catch (Exception e) {
-						return;
-					}
-				}
-				// EXAMINE RESULTS
-				for (DFS1Thread thread : threads.keySet()) {
-					if (thread.solutionFound) {
-						// SOLUTION FOUND BY THIS THREAD
-						// REWRITE ACTIONS ...
-						EDirection firstAction = threads.get(thread);
-						
-						result.clear();
-						result.addAll(preActions);
-						result.add(firstAction);
-						result.addAll(thread.result);
-						
-						solutionFound = true;
-					}
-				}
-			}
+		protected List<EDirection> compute() {
+			return dfs(level, previousMove) ? result : null;
 		}
-		
-		private boolean dfs(int level) {
+
+		private boolean dfs(int level, EDirection previousMove) {
 			if (level <= 0) return false; // DEPTH-LIMITED
-			if (MTDFS1Agent.this.solutionFound) {
-				return false; // SOLUTION ALREADY FOUND IN DIFFERENT THREAD
+			if (cancelled) return false;  // SOLUTION ALREADY FOUND IN DIFFERENT TASK
+			if (table != null && table.visit(table.withPreviousMove(key, previousMove), level)) {
+				return false; // SEARCHED AT LEAST THIS DEEP ALREADY
 			}
-			
+
+			searchedNodes.incrementAndGet();
+
 			List<CAction> actions = new ArrayList<CAction>(4);
-			
-			for (CMove move : CMove.getActions()) {
-				if (move.isPossible(board)) {
-					actions.add(move);
-				}
-			}
-			for (CPush push : CPush.getActions()) {
-				if (push.isPossible(board)) {
-					actions.add(push);
-				}
+			collectActions(board, previousMove, actions);
+
+			if (actions.size() > 1 && level >= MIN_SPLIT_LEVEL && ForkJoinTask.getSurplusQueuedTaskCount() < SURPLUS_TASKS) {
+				return split(actions, level);
 			}
-			
-			return dfs(actions, level);
-		}
-		
-		private boolean dfs(List<CAction> actions, int level) {
-			if (level <= 0) return false; // DEPTH-LIMITED
-			
-			MTDFS1Agent.this.searchedNodes.incrementAndGet();
-			
+
 			// TRY ACTIONS
 			for (CAction action : actions) {
-				if (MTDFS1Agent.this.solutionFound) {
-					return false; // SOLUTION ALREADY FOUND IN DIFFERENT THREAD
-				}
-				
 				// PERFORM THE ACTION
+				long parentKey = key;
+				key = nextKey(action);
 				result.add(action.getDirection());
 				action.perform(board);
-				
-				// DEBUG
-				//System.out.println("PERFORMED: " + action);
-				//board.debugPrint();
-				
+
 				// CHECK VICTORY
 				if (board.isVictory()) {
 					// SOLUTION FOUND!
-					solutionFound();					
+					cancelled = true;
 					return true;
 				}
-				
+
 				// CONTINUE THE SEARCH
-				if (dfs(level-1)) {
+				if (dfs(level-1, previousMove(action))) {
 					// SOLUTION FOUND!
-					solutionFound();
 					return true;
 				}
-				
+
 				// REVESE ACTION
 				result.remove(result.size()-1);
 				action.reverse(board);
-				
-				// DEBUG
-				//System.out.println("REVERSED: " + action + " -> " + action.getDirection().opposite());
-				//board.debugPrint();
+				key = parentKey;
 			}
-			
+
 			return false;
 		}
 
-		private void solutionFound() {
-			synchronized(MTDFS1Agent.this.solutionFoundMutex) {
-				if (!MTDFS1Agent.this.solutionFound) {
-					MTDFS1Agent.this.solutionFound = true;
-					solutionFound = true;
+		// One subtask per action; the first one to find a solution wins, the others see 'cancelled'
+		private boolean split(List<CAction> actions, int level) {
+			List<DFSTask> tasks = new ArrayList<DFSTask>(actions.size());
+			for (CAction action : actions) {
+				BoardCompact taskBoard = board.clone();
+				long taskKey = nextKey(action);
+				action.perform(taskBoard);
+				DFSTask task = new DFSTask(taskBoard, taskKey, level-1, previousMove(action));
+				if (taskBoard.isVictory()) {
+					// SOLUTION FOUND!
+					cancelled = true;
+					result.add(action.getDirection());
+					return true;
+				}
+				tasks.add(task);
+			}
+
+			invokeAll(tasks);
+
+			for (int i = 0; i < tasks.size(); i++) {
+				List<EDirection> taskResult = tasks.get(i).join();
+				if (taskResult != null) {
+					result.add(actions.get(i).getDirection());
+					result.addAll(taskResult);
+					return true;
 				}
 			}
+			return false;
 		}
-		
+
+		// Key after 'action', before it is performed
+		private long nextKey(CAction action) {
+			if (table == null) return 0;
+			if (action.getType() == EActionType.PUSH) return table.push(key, board, board.playerX, board.playerY, action.getDirection());
+			return table.move(key, board.playerX, board.playerY, action.getDirection());
+		}
+
 	}
-		
 
 }
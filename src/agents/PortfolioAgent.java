@@ -0,0 +1,344 @@
+package agents;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import astar.AStar;
+import astar.AStarProblem;
+import astar.BidirectionalSearch;
+import astar.BoardAStar;
+import astar.BoardCustom;
+import astar.IDAStar;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+
+/**
+ * Races several solvers on the same level; the first plan found is played, the other solvers are cancelled.
+ * <p>
+ * Every {@link Strategy} is prepared one after the other on the think thread (solvers over {@link BoardCustom} set up
+ * its static level data there), then each runs on a thread of its own. Virtual threads are used when the JDK has them
+ * and there are at least as many cores as strategies; virtual threads are not time-sliced, so with fewer cores a busy
+ * solver would keep the others from running, and platform threads are used instead.
+ * <p>
+ * Cancellation is cooperative: the losers are interrupted, which the searches check regularly, and joined before
+ * {@link #think(BoardCompact)} returns, so no solver outlives its level. Strategies that fail (no plan) drop out of
+ * the race; the level fails when all of them do or the time runs out. Wins are counted per strategy over the levels.
+ * When move-optimal solutions are required, only strategies that guarantee them take part.
+ */
+public class PortfolioAgent extends ArtificialAgent {
+
+	/**
+	 * A solver configuration of the portfolio.
+	 */
+	public interface Strategy {
+
+		String getName();
+
+		/**
+		 * Whether the plans are move-optimal when 'optimal' is passed to {@link #prepare(BoardCompact, boolean, long)}.
+		 */
+		boolean isOptimal();
+
+		/**
+		 * Sets the solver up for 'board'; the returned search then runs on its own thread, returns the plan or null
+		 * and should give up soon after its thread is interrupted.
+		 * @param board
+		 * @param optimal whether move-optimal solutions are required
+		 * @param budgetMillis time the search may take; non-positive == no limit
+		 * @return
+		 */
+		Callable<List<EDirection>> prepare(BoardCompact board, boolean optimal, long budgetMillis);
+	}
+
+	private static final Method OF_VIRTUAL, BUILDER_NAME, BUILDER_UNSTARTED; // Thread.ofVirtual() API, null before Java 21
+
+	static {
+		Method ofVirtual = null, name = null, unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+		} catch (ReflectiveOperationException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_UNSTARTED = unstarted;
+	}
+
+	private final List<Strategy> strategies;
+
+	private final Map<String, int[]> wins = new LinkedHashMap<String, int[]>(); // name -> { wins, races }
+
+	public PortfolioAgent() {
+		this(aStar(), anytime(), idaStar(), bidirectional(), dfs2());
+	}
+
+	public PortfolioAgent(Strategy... strategies) {
+		this.strategies = Arrays.asList(strategies);
+		for (Strategy strategy : strategies) wins.put(strategy.getName(), new int[2]);
+	}
+
+	// One finished race entry
+	private static class Outcome {
+		final int index;
+		final List<EDirection> plan;
+		final Throwable failure;
+
+		Outcome(int index, List<EDirection> plan, Throwable failure) {
+			this.index = index;
+			this.plan = plan;
+			this.failure = failure;
+		}
+	}
+
+	@Override
+	protected List<EDirection> think(BoardCompact board) {
+		long searchStartMillis = System.currentTimeMillis();
+		long budget = timeoutMillis > 0 ? Math.max(1, timeoutMillis - Math.max(100, timeoutMillis / 10)) : 0;
+
+		// PREPARE, one strategy at a time
+		List<Strategy> entrants = new ArrayList<Strategy>();
+		List<Callable<List<EDirection>>> searches = new ArrayList<Callable<List<EDirection>>>();
+		for (Strategy strategy : strategies) {
+			if (optimal && !strategy.isOptimal()) continue;
+			entrants.add(strategy);
+			searches.add(strategy.prepare(board, optimal, budget));
+		}
+
+		// RACE
+		LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<Outcome>();
+		boolean virtual = OF_VIRTUAL != null && Runtime.getRuntime().availableProcessors() >= searches.size();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < searches.size(); i++) {
+			final int index = i;
+			final Callable<List<EDirection>> search = searches.get(i);
+			Runnable race = () -> {
+				try {
+					outcomes.add(new Outcome(index, search.call(), null));
+				} catch (Throwable e) {
+					outcomes.add(new Outcome(index, null, e));
+				}
+			};
+			threads.add(newThread(race, "Portfolio-" + entrants.get(i).getName(), virtual));
+		}
+		for (Thread thread : threads) thread.start();
+
+		Outcome winner = null;
+		try {
+			long deadline = budget > 0 ? searchStartMillis + budget : Long.MAX_VALUE;
+			for (int finished = 0; finished < threads.size() && winner == null; finished++) {
+				long left = deadline - System.currentTimeMillis();
+				Outcome outcome = deadline == Long.MAX_VALUE ? outcomes.take() : outcomes.poll(Math.max(0, left), TimeUnit.MILLISECONDS);
+				if (outcome == null) break; // OUT OF TIME
+				if (outcome.failure != null && verbose) {
+					System.out.println("[Portfolio] " + entrants.get(outcome.index).getName() + " failed: " + outcome.failure);
+				}
+				if (outcome.plan != null && !outcome.plan.isEmpty()) winner = outcome;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // stopped, cancel the race below
+		} finally {
+			// CANCEL THE REST AND WAIT FOR THEM
+			for (Thread thread : threads) thread.interrupt();
+			for (Thread thread : threads) joinUninterruptibly(thread);
+		}
+
+		synchronized(wins) {
+			for (Strategy strategy : entrants) wins.get(strategy.getName())[1]++;
+			if (winner != null) wins.get(entrants.get(winner.index).getName())[0]++;
+		}
+
+        if (verbose) {
+            System.out.println("PORTFOLIO TOOK: " + (System.currentTimeMillis() - searchStartMillis) + " ms"
+                               + (virtual ? " (virtual threads)" : ""));
+            System.out.println("WINNER:         " + (winner == null ? "NONE" : entrants.get(winner.index).getName()
+                                                                                + ", " + winner.plan.size() + " steps"));
+            printStatistics(System.out);
+            System.out.println("=================");
+        }
+
+		return winner == null ? null : winner.plan;
+	}
+
+	/**
+	 * Wins of the strategy over the levels this agent played.
+	 * @param name
+	 * @return
+	 */
+	public int getWins(String name) {
+		synchronized(wins) {
+			int[] record = wins.get(name);
+			return record == null ? 0 : record[0];
+		}
+	}
+
+	public void printStatistics(PrintStream out) {
+		synchronized(wins) {
+			for (Map.Entry<String, int[]> entry : wins.entrySet()) {
+				out.printf("  %-14s won %d of %d races\n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+			}
+		}
+	}
+
+	private static Thread newThread(Runnable task, String name, boolean virtual) {
+		if (virtual) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+			} catch (ReflectiveOperationException e) {
+				// fall back to a platform thread
+			}
+		}
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	// ----------
+	// STRATEGIES
+	// ----------
+
+	private static List<EDirection> toDirections(List<TAction> actions) {
+		if (actions == null) return null;
+		List<EDirection> result = new ArrayList<EDirection>();
+		for (TAction action : actions) result.addAll(Arrays.asList(action.getDirections()));
+		return result;
+	}
+
+	private static abstract class AStarStrategy implements Strategy {
+		private final String name;
+		private final boolean optimal;
+
+		AStarStrategy(String name, boolean optimal) {
+			this.name = name;
+			this.optimal = optimal;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public boolean isOptimal() {
+			return optimal;
+		}
+
+		@Override
+		public Callable<List<EDirection>> prepare(BoardCompact board, boolean optimal, long budgetMillis) {
+			// push-optimal search over canonical states unless move-optimal solutions are required
+			AStarProblem problem = new AStarProblem(new BoardCustom(board), board, !optimal);
+			return () -> toDirections(search(problem, budgetMillis));
+		}
+
+		/**
+		 * @return playable actions or null
+		 */
+		abstract List<TAction> search(AStarProblem problem, long budgetMillis);
+	}
+
+	/**
+	 * A* with the min-cost matching heuristic, push-optimal (move-optimal when required).
+	 */
+	public static Strategy aStar() {
+		return new AStarStrategy("A*", true) {
+			@Override
+			List<TAction> search(AStarProblem problem, long budgetMillis) {
+				Solution<BoardCustom, TAction> solution = BoardAStar.search(problem);
+				return solution == null ? null : solution.actions;
+			}
+		};
+	}
+
+	/**
+	 * ARA* with the packing-order penalty added to the heuristic and goal-room macros, as MyAgent plays
+	 * without optimality; the best plan within the budget.
+	 */
+	public static Strategy anytime() {
+		return new AStarStrategy("ARA*", false) {
+			@Override
+			List<TAction> search(AStarProblem problem, long budgetMillis) {
+				problem.setGoalRoomMacros(true);
+				problem.setPackingPenalty(true);
+				Solution<BoardCustom, TAction> solution = AStar.searchAnytime(problem, 3.0, 0.5, budgetMillis, (s, bound) -> {});
+				return solution == null ? null : problem.toPlayable(solution.actions);
+			}
+		};
+	}
+
+	/**
+	 * IDA* with a transposition table, optimal like {@link #aStar()} in little memory.
+	 */
+	public static Strategy idaStar() {
+		return new AStarStrategy("IDA*", true) {
+			@Override
+			List<TAction> search(AStarProblem problem, long budgetMillis) {
+				Solution<BoardCustom, TAction> solution = IDAStar.search(problem, 20);
+				return solution == null ? null : problem.toPlayable(solution.actions);
+			}
+		};
+	}
+
+	/**
+	 * Forward and reverse (pull) search meeting in the middle; not optimal.
+	 */
+	public static Strategy bidirectional() {
+		return new AStarStrategy("Bidirectional", false) {
+			@Override
+			List<TAction> search(AStarProblem problem, long budgetMillis) {
+				Solution<BoardCustom, TAction> solution = BidirectionalSearch.search(problem, budgetMillis);
+				return solution == null ? null : solution.actions;
+			}
+		};
+	}
+
+	/**
+	 * {@link DFS2Agent}; finds short levels without any setup, not optimal.
+	 */
+	public static Strategy dfs2() {
+		return new Strategy() {
+			@Override
+			public String getName() {
+				return "DFS2";
+			}
+
+			@Override
+			public boolean isOptimal() {
+				return false;
+			}
+
+			@Override
+			public Callable<List<EDirection>> prepare(BoardCompact board, boolean optimal, long budgetMillis) {
+				DFS2Agent agent = new DFS2Agent();
+				BoardCompact copy = board.clone();
+				return () -> agent.think(copy);
+			}
+		};
+	}
+
+}
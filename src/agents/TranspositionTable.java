@@ -0,0 +1,140 @@
+package agents;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+
+/**
+ * Lock-free, fixed-size transposition table for depth-limited DFS, shared by all search threads.
+ * <p>
+ * An entry is a single long: the upper 56 bits of the state's Zobrist key and, in the low 8 bits, the depth the state
+ * was (or is being) searched to. Entries live in buckets of two slots; a state found with at least the depth asked for
+ * needs no search, otherwise it is recorded over the shallower slot of its bucket if that one is not deeper. Writes
+ * are single CASes and may be lost to a concurrent writer, which only costs a repeated search.
+ * <p>
+ * Keys are kept by the searcher, see {@link #key(BoardCompact)} and the incremental {@link #move(long, int, int, EDirection)}
+ * and {@link #push(long, BoardCompact, int, int, EDirection)}.
+ */
+public class TranspositionTable {
+
+	private static final int DEPTH_BITS = 8;
+
+	private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+	private final AtomicLongArray entries;
+
+	private final int mask; // of bucket indices
+
+	private final int height;
+
+	private final long[] playerKeys;
+
+	private final long[] boxKeys;
+
+	private final long[] previousMoveKeys;
+
+	/**
+	 * @param board the level the keys are for
+	 * @param bits log2 of the number of entries
+	 */
+	public TranspositionTable(BoardCompact board, int bits) {
+		entries = new AtomicLongArray(1 << bits);
+		mask = (1 << (bits - 1)) - 1;
+		height = board.height();
+
+		Random random = new Random(42);
+		int size = board.width() * board.height();
+		playerKeys = new long[size];
+		boxKeys = new long[size];
+		for (int i = 0; i < size; i++) {
+			playerKeys[i] = random.nextLong();
+			boxKeys[i] = random.nextLong();
+		}
+		previousMoveKeys = new long[EDirection.values().length];
+		for (int i = 0; i < previousMoveKeys.length; i++) previousMoveKeys[i] = random.nextLong();
+	}
+
+	/**
+	 * Key of the state from scratch.
+	 * @param board
+	 * @return
+	 */
+	public long key(BoardCompact board) {
+		long result = playerKeys[index(board.playerX, board.playerY)];
+		for (int x = 0; x < board.width(); ++x) {
+			for (int y = 0; y < board.height(); ++y) {
+				int tile = board.tile(x, y);
+				if (CTile.isSomeBox(tile)) result ^= boxKey(index(x, y), CTile.getBoxNum(tile));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Key after the player at 'playerX', 'playerY' moved in 'dir'.
+	 */
+	public long move(long key, int playerX, int playerY, EDirection dir) {
+		return key ^ playerKeys[index(playerX, playerY)] ^ playerKeys[index(playerX + dir.dX, playerY + dir.dY)];
+	}
+
+	/**
+	 * Key after the player at 'playerX', 'playerY' pushed in 'dir'; call before the push is performed on 'board'.
+	 */
+	public long push(long key, BoardCompact board, int playerX, int playerY, EDirection dir) {
+		int box = index(playerX + dir.dX, playerY + dir.dY);
+		int boxTo = index(playerX + 2 * dir.dX, playerY + 2 * dir.dY);
+		int boxNum = CTile.getBoxNum(board.tile(playerX + dir.dX, playerY + dir.dY));
+		return move(key, playerX, playerY, dir) ^ boxKey(box, boxNum) ^ boxKey(boxTo, boxNum);
+	}
+
+	/**
+	 * Key of the state in a search whose options depend on the move that led to it (see {@link MTDFS2Agent}).
+	 */
+	public long withPreviousMove(long key, EDirection previousMove) {
+		return key ^ previousMoveKeys[previousMove.ordinal()];
+	}
+
+	/**
+	 * Whether the state was searched to at least 'depth' already; if not, records that it is being searched to 'depth'.
+	 * @param key
+	 * @param depth remaining search depth
+	 * @return true if the search of the state can be cut off
+	 */
+	public boolean visit(long key, int depth) {
+		long tag = key & ~DEPTH_MASK;
+		long entry = tag | Math.min(depth, DEPTH_MASK);
+		int slot = (int) (key >>> 40) & mask;
+		slot <<= 1;
+
+		long first = entries.get(slot);
+		long second = entries.get(slot + 1);
+		if ((first & ~DEPTH_MASK) == tag) return replaceIfShallower(slot, first, entry);
+		if ((second & ~DEPTH_MASK) == tag) return replaceIfShallower(slot + 1, second, entry);
+
+		// new state, over the shallower slot unless it is deeper than this one
+		if ((first & DEPTH_MASK) > (second & DEPTH_MASK)) {
+			slot++;
+			first = second;
+		}
+		if (first == 0 || (first & DEPTH_MASK) <= depth) entries.compareAndSet(slot, first, entry);
+		return false;
+	}
+
+	private boolean replaceIfShallower(int slot, long old, long entry) {
+		if ((old & DEPTH_MASK) >= (entry & DEPTH_MASK)) return true;
+		entries.compareAndSet(slot, old, entry);
+		return false;
+	}
+
+	private int index(int x, int y) {
+		return x * height + y;
+	}
+
+	private long boxKey(int index, int boxNum) {
+		return boxKeys[index] * (2 * boxNum + 1); // odd factor, distinct per box kind
+	}
+
+}
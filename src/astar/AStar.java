@@ -5,10 +5,20 @@ import java.util.*;
 import astar.search.*;
 
 // A* search
+// Also weighted A* (f = g + w * h, solutions at most w times the optimum) and anytime repairing
+// A* (ARA*), which runs weighted searches with a decreasing weight, reusing the previous search,
+// and reports every better solution together with its suboptimality bound.
+// An interrupt of the searching thread cancels the search: search() returns null, searchAnytime() the
+// best solution so far.
 
 public class AStar<S, A> {
 
   public static <S, A> Solution<S, A> search(HeuristicProblem<S, A> prob) {
+    return search(prob, 1.0);
+  }
+
+  // weighted A*; 'weight' >= 1, 1 is plain A*
+  public static <S, A> Solution<S, A> search(HeuristicProblem<S, A> prob, double weight) {
 
     PriorityQueue<Node<S, A>> pq = new PriorityQueue<>();
     int searchedNodes = 0;
@@ -18,11 +28,12 @@ public class AStar<S, A> {
 
     // add initial node
     S startState = prob.initialState();
-    pq.add(new Node<>(startState, null, null, 0, prob.estimate(startState)));
+    pq.add(new Node<>(startState, null, null, 0, prob.estimate(startState), weight));
     costs.put(startState, 0.0);
 
     while (!pq.isEmpty()) {
       searchedNodes++;
+      if (Cancellation.isRequested(searchedNodes)) return null;
       Node<S, A> curr = pq.poll();
 
       if (prob.isGoal(curr.getState())) {
@@ -36,7 +47,7 @@ public class AStar<S, A> {
 
         if (nextCost < costs.getOrDefault(nextState, Double.MAX_VALUE)) {
           costs.put(nextState, nextCost);
-          Node<S, A> nextNode = new Node<>(nextState, action, curr, nextCost, prob.estimate(nextState));
+          Node<S, A> nextNode = new Node<>(nextState, action, curr, nextCost, prob.estimate(nextState), weight);
           pq.add(nextNode);
         }
       }
@@ -45,6 +56,136 @@ public class AStar<S, A> {
     return null;
   }
 
+  // Receives the solutions of searchAnytime() as they improve
+  public interface SolutionListener<S, A> {
+    // 'bound': the solution costs at most 'bound' times the optimum
+    void improved(Solution<S, A> solution, double bound);
+  }
+
+  /**
+   * ARA*: weighted searches starting at 'initialWeight', lowering the weight by 'weightStep' down to 1
+   * until the solution is proven optimal or 'timeoutMillis' (if positive) runs out.
+   * Returns the best solution found, null if none was found in time.
+   */
+  public static <S, A> Solution<S, A> searchAnytime(HeuristicProblem<S, A> prob, double initialWeight, double weightStep,
+                                                    long timeoutMillis, SolutionListener<S, A> listener) {
+    long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+    Map<S, Node<S, A>> nodes = new HashMap<>();
+    List<Node<S, A>> incons = new ArrayList<>(); // improved after being closed, reopened by the next iteration
+    PriorityQueue<QueueEntry<S, A>> open = new PriorityQueue<>();
+    int searchedNodes = 0;
+    int iteration = 0;
+    Node<S, A> goal = null;
+    Solution<S, A> best = null;
+
+    S startState = prob.initialState();
+    Node<S, A> start = new Node<>(startState, null, null, 0, prob.estimate(startState), initialWeight);
+    nodes.put(startState, start);
+    start.inOpen = true;
+    incons.add(start); // queued by the first iteration
+    if (prob.isGoal(startState)) goal = start;
+
+    for (double weight = initialWeight; ; weight = Math.max(1.0, weight - weightStep)) {
+      iteration++;
+
+      // re-key the open list for the new weight, adding states improved after they were closed
+      List<Node<S, A>> queued = new ArrayList<>(incons);
+      for (QueueEntry<S, A> entry : open) {
+        if (entry.node.inOpen && entry.node.queuedIn != iteration) {
+          entry.node.queuedIn = iteration;
+          queued.add(entry.node);
+        }
+      }
+      open.clear();
+      incons.clear();
+      for (Node<S, A> node : queued) {
+        node.inOpen = true;
+        node.inIncons = false;
+        open.add(new QueueEntry<>(node, weight));
+      }
+
+      // improve the path: expand while something could beat the current goal
+      boolean stopped = false;
+      while (!open.isEmpty()) {
+        QueueEntry<S, A> entry = open.peek();
+        Node<S, A> curr = entry.node;
+        if (!curr.inOpen || entry.priority != curr.cost + weight * curr.heuristicEstimate) {
+          open.poll(); // stale entry, the node was expanded or reached more cheaply after this one was queued
+          continue;
+        }
+        if (goal != null && entry.priority >= goal.cost) break;
+        if (System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted()) {
+          stopped = true;
+          break;
+        }
+        open.poll();
+
+        searchedNodes++;
+        curr.inOpen = false;
+        curr.closedIn = iteration;
+
+        for (A action : prob.actions(curr.getState())) {
+          S nextState = prob.result(curr.getState(), action);
+          double nextCost = curr.cost + prob.cost(curr.getState(), action);
+
+          Node<S, A> next = nodes.get(nextState);
+          if (next == null) {
+            next = new Node<>(nextState, action, curr, nextCost, prob.estimate(nextState), weight);
+            nodes.put(nextState, next);
+          } else if (nextCost < next.cost) {
+            next.action = action;
+            next.parent = curr;
+            next.cost = nextCost;
+          } else {
+            continue;
+          }
+
+          if (prob.isGoal(nextState) && (goal == null || nextCost < goal.cost)) goal = next;
+          if (next.closedIn == iteration) {
+            if (!next.inIncons) incons.add(next);
+            next.inIncons = true;
+          } else {
+            next.inOpen = true;
+            open.add(new QueueEntry<>(next, weight));
+          }
+        }
+      }
+
+      if (goal != null && (best == null || goal.cost < best.pathCost)) {
+        best = getSolution(goal, searchedNodes);
+      }
+      if (stopped) return best; // out of time, the goal of the unfinished iteration still counts
+      if (best == null) return null; // open list exhausted, no solution
+
+      // suboptimality bound: goal cost over the lowest g + h among states that could still improve it
+      double minCost = goal.cost;
+      for (QueueEntry<S, A> entry : open) {
+        if (entry.node.inOpen) minCost = Math.min(minCost, entry.node.cost + entry.node.heuristicEstimate);
+      }
+      for (Node<S, A> node : incons) minCost = Math.min(minCost, node.cost + node.heuristicEstimate);
+      double bound = minCost > 0 ? Math.min(weight, goal.cost / minCost) : 1.0;
+      if (listener != null) listener.improved(best, bound);
+
+      if (weight <= 1.0 || bound <= 1.0) return best;
+    }
+  }
+
+  // Open list entry of ARA*; a node is queued again (new entry) whenever its priority changes
+  private static class QueueEntry<S, A> implements Comparable<QueueEntry<S, A>> {
+    private final Node<S, A> node;
+    private final double priority;
+
+    public QueueEntry(Node<S, A> node, double weight) {
+      this.node = node;
+      this.priority = node.cost + weight * node.heuristicEstimate;
+    }
+
+    @Override
+    public int compareTo(QueueEntry<S, A> other) {
+      return Double.compare(this.priority, other.priority);
+    }
+  }
+
   private static <S, A> Solution<S, A> getSolution(Node<S, A> goalNode, int searchedNodes) {
     List<A> actions = new ArrayList<>();
     Node<S, A> currNode = goalNode;
@@ -65,13 +206,21 @@ public class AStar<S, A> {
     private Node<S, A> parent;
     private double cost;
     private double heuristicEstimate;
+    private double priority; // cost + weight * heuristicEstimate, for weighted A*
+
+    // ARA* bookkeeping
+    private boolean inOpen;
+    private boolean inIncons;
+    private int closedIn; // iteration the node was last expanded in
+    private int queuedIn; // iteration the node was last re-keyed in
 
-    public Node(S state, A action, Node<S, A> parent, double cost, double heuristicEstimate) {
+    public Node(S state, A action, Node<S, A> parent, double cost, double heuristicEstimate, double weight) {
       this.state = state;
       this.action = action;
       this.parent = parent;
       this.cost = cost;
       this.heuristicEstimate = heuristicEstimate;
+      this.priority = cost + weight * heuristicEstimate;
     }
 
     public S getState() {
@@ -92,7 +241,7 @@ public class AStar<S, A> {
 
     @Override
     public int compareTo(Node<S, A> other) {
-      return Double.compare(this.cost + this.heuristicEstimate, other.cost + other.heuristicEstimate);
+      return Double.compare(this.priority, other.priority);
     }
   }
-}
\ No newline at end of file
+}
@@ -3,48 +3,262 @@ package astar;
 import java.util.*;
 
 import astar.actions.TAction;
+import astar.actions.TCompactPush;
+import astar.actions.TMacroMove;
+import astar.actions.TPush;
+import astar.actions.TWalk;
+import astar.actions.TWalkPushSequence;
 import astar.detectors.DeadSquareDetector;
-import astar.heuristics.MinDistFromTargetsHeuristic;
-import astar.search.HeuristicProblem;
+import astar.detectors.PICorralDetector;
+import astar.heuristics.MinCostMatchingHeuristic;
+import astar.heuristics.PackingOrder;
+import astar.heuristics.PushDistanceTable;
+import astar.search.ReversibleProblem;
 import game.board.compact.BoardCompact;
 
 
-public class AStarProblem implements HeuristicProblem<BoardCustom, TAction> {
+public class AStarProblem implements ReversibleProblem<BoardCustom, TAction> {
     BoardCustom initState;
+    BoardCustom realInitState;
+
+    PushDistanceTable distanceTable;
+    // the matching keeps scratch arrays, one instance per searching thread
+    ThreadLocal<MinCostMatchingHeuristic> matchingHeuristic;
+
+    // Canonical mode: the player is kept at the top-left-most tile of its reachable area, so states
+    // only differ by box layout plus player region. Every action is then a single push or macro (walk lengths
+    // depend on the real player tile), so costs count pushes and solutions are push-optimal.
+    boolean canonical;
+
+    // PI-corral pruning; on by default in canonical mode only, as it keeps push counts but not move counts
+    boolean piCorralPruning;
+
+    // Macro moves of the level; tunnel macros keep push counts (on in canonical mode), goal-room macros
+    // don't keep either (off unless asked for)
+    MacroMoves macros;
+    boolean tunnelMacros;
+    boolean goalRoomMacros;
+
+    // Target packing order: pushes onto targets that wall in empty ones are generated last, and with the
+    // penalty on (not admissible, off unless asked for) every such box adds PACKING_PENALTY to estimate()
+    static final int PACKING_PENALTY = 4;
+    PackingOrder packingOrder;
+    boolean packingPenalty;
 
-    MinDistFromTargetsHeuristic minDistHeuristic;
-    boolean[][] isSimpleDeadlock;
-    
     public AStarProblem(BoardCustom initialState, BoardCompact boardCompact) {
+        this(initialState, boardCompact, false);
+    }
+
+    public AStarProblem(BoardCustom initialState, BoardCompact boardCompact, boolean canonical) {
+        this.canonical = canonical;
+        this.piCorralPruning = canonical;
+        this.tunnelMacros = canonical;
         this.initState = initialState;
-        this.isSimpleDeadlock = DeadSquareDetector.detect(boardCompact);
-        this.minDistHeuristic = new MinDistFromTargetsHeuristic(initialState);
+        this.realInitState = initialState;
+        if (canonical) {
+            this.initState = initialState.clone();
+            this.initState.normalizePlayer();
+        }
+        DeadSquareDetector.detect(boardCompact); // dead squares of the level, used by DeadlockPipeline
+        this.packingOrder = new PackingOrder(initialState);
+        this.macros = new MacroMoves(initialState);
+        this.distanceTable = new PushDistanceTable();
+        this.matchingHeuristic = ThreadLocal.withInitial(() -> new MinCostMatchingHeuristic(distanceTable));
+    }
+
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    public void setPICorralPruning(boolean enabled) {
+        this.piCorralPruning = enabled;
+    }
+
+    public void setTunnelMacros(boolean enabled) {
+        this.tunnelMacros = enabled;
+    }
+
+    public void setGoalRoomMacros(boolean enabled) {
+        this.goalRoomMacros = enabled;
+    }
+
+    public void setPackingPenalty(boolean enabled) {
+        this.packingPenalty = enabled;
+    }
+
+    public PackingOrder getPackingOrder() {
+        return packingOrder;
     }
 
     public BoardCustom initialState() {
         return this.initState;
     }
 
+    public BoardCustom realInitialState() {
+        return this.realInitState;
+    }
+
     public List<TAction> actions(BoardCustom state) {
-        return state.getActions(isSimpleDeadlock);
+        if (!piCorralPruning && !tunnelMacros && !goalRoomMacros) return state.getActions();
+
+        PushGenerator generator = PushGenerator.get();
+        int count = pushes(state);
+        List<TAction> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long push = generator.get(i);
+            result.add(isMacro(push) ? macros.toAction(generator.getWalk(state, push), push) : generator.toAction(state, push));
+        }
+        return result;
+    }
+
+    // Allocation-free alternative to actions(): fills the thread's PushGenerator with TCompactPush descriptors
+    public int pushes(BoardCustom state) {
+        PushGenerator generator = PushGenerator.get();
+        int count = generator.generate(state);
+        if (piCorralPruning) count = PICorralDetector.get().prune(state, generator, count);
+        if (tunnelMacros || goalRoomMacros) macros.expand(state, generator, count, tunnelMacros, goalRoomMacros);
+        if (packingOrder.getLayerCount() > 1) generator.deferOutOfOrder(state, this, packingOrder, count);
+        return count;
+    }
+
+    private static boolean isMacro(long push) {
+        return TCompactPush.getRun(push) > 0 || TCompactPush.getMacro(push) >= 0;
+    }
+
+    /**
+     * A push descriptor as a regular action.
+     * @param walk the walk to the tile behind the box
+     * @param push
+     * @return
+     */
+    public TAction toAction(TWalk walk, long push) {
+        if (isMacro(push)) return macros.toAction(walk, push);
+        return new TWalkPushSequence(walk, TPush.getAction(TCompactPush.getDirection(push)));
+    }
+
+    // Where the push (or macro) starting with the box at 'boxFrom' leaves it
+    public int destination(int boxFrom, long push) {
+        return TCompactPush.getMacro(push) >= 0 ? macros.getTarget(push) : TCompactPush.getDestination(boxFrom, push);
     }
 
     public BoardCustom result(BoardCustom s, TAction action) {
         BoardCustom newState = s.clone();
         action.perform(newState);
+        if (canonical) newState.normalizePlayer();
         return newState;
     }
 
+    // In-place version of result(); returns the player position undo() needs to restore
+    public int apply(BoardCustom state, TAction action) {
+        action.perform(state);
+        int player = state.positions[0];
+        if (canonical) state.normalizePlayer();
+        return player;
+    }
+
+    public void undo(BoardCustom state, TAction action, int player) {
+        if (canonical) state.setPlayer(player);
+        action.reverse(state);
+    }
+
+    // In-place push of a TCompactPush descriptor
+    public void apply(BoardCustom state, long push) {
+        if (TCompactPush.getMacro(push) >= 0) macros.perform(state, push);
+        else TCompactPush.perform(state, push);
+        if (canonical) state.normalizePlayer();
+    }
+
+    // Reverses apply(); 'boxFrom' and 'player' are the pushed box and the player positions before the push
+    public void undo(BoardCustom state, long push, int boxFrom, int player) {
+        state.moveBox(destination(boxFrom, push), boxFrom);
+        state.setPlayer(player);
+    }
+
+    public int cost(long push) {
+        if (TCompactPush.getMacro(push) >= 0) {
+            return canonical ? macros.getPushes(push) : TCompactPush.getWalkCost(push) + macros.getMoves(push);
+        }
+        return canonical ? 1 + TCompactPush.getRun(push) : TCompactPush.getSteps(push);
+    }
+
+    public long key(BoardCustom state) {
+        return state.getHash();
+    }
+
+    public BoardCustom copy(BoardCustom state) {
+        return state.clone();
+    }
+
     public boolean isGoal(BoardCustom state) {
         return state.isVictory();
     }
 
     public double cost(BoardCustom state, TAction action) {
-        return action.getSteps();
+        if (!canonical) return action.getSteps();
+        if (!(action instanceof TMacroMove)) return 1;
+        return ((TMacroMove) action).getPushes();
     }
 
     public double estimate(BoardCustom state) {
+        double result = matchingHeuristic.get().estimate(state);
+        if (packingPenalty) result += PACKING_PENALTY * packingOrder.getOutOfOrder(state);
+        return result;
+    }
+
+    // Ints of heuristic data a search may keep per node to estimate children incrementally
+    public int heuristicStateSize() {
+        return matchingHeuristic.get().stateSize();
+    }
+
+    // estimate() that also stores the node's heuristic data; above BoardAStar.MAX_ESTIMATE means dead
+    public int estimate(BoardCustom state, int[] data, int offset) {
+        return matchingHeuristic.get().estimate(state, data, offset);
+    }
+
+    // Estimate of the child reached by pushing the box at 'boxFrom' to 'boxTo', derived from the parent's data
+    public int estimate(int boxFrom, int boxTo, int[] parentData, int parentOffset, int[] data, int offset) {
+        return matchingHeuristic.get().estimate(boxFrom, boxTo, parentData, parentOffset, data, offset);
+    }
+
+    // Turns a solution into actions the real player can execute from the real initial position.
+    // Only needed in canonical mode, where walks are planned from the canonical tile.
+    public List<TAction> toPlayable(List<TAction> actions) {
+        if (!canonical) return actions;
+
+        List<TAction> result = new ArrayList<>();
+        BoardCustom real = realInitState.clone();
+        BoardCustom state = initState.clone();
+        for (TAction action : actions) {
+            if (action instanceof TMacroMove) {
+                TMacroMove macro = (TMacroMove) action;
+                TAction playable = macro.withWalk(real.getWalkTo(macro.getWalk().getDestinationX(), macro.getWalk().getDestinationY()));
+                playable.perform(real);
+                result.add(playable);
+                state = result(state, action);
+                continue;
+            }
+
+            // where the push starts from and which way it goes
+            TPush push;
+            int fromX, fromY;
+            if (action instanceof TWalkPushSequence) {
+                TWalkPushSequence sequence = (TWalkPushSequence) action;
+                push = sequence.getPush();
+                fromX = sequence.getWalk().getDestinationX();
+                fromY = sequence.getWalk().getDestinationY();
+            } else {
+                push = TPush.getAction(action.getDirection());
+                fromX = state.getPlayerX();
+                fromY = state.getPlayerY();
+            }
+
+            TWalk walk = real.getWalkTo(fromX, fromY);
+            TAction playable = new TWalkPushSequence(walk, push);
+            playable.perform(real);
+            result.add(playable);
 
-        return this.minDistHeuristic.estimate(state);
+            state = result(state, action);
+        }
+        return result;
     }
 }
@@ -0,0 +1,319 @@
+package astar;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import astar.actions.TAction;
+import astar.actions.TPull;
+import astar.actions.TPush;
+import astar.actions.TWalk;
+import astar.actions.TWalkPushSequence;
+import astar.search.ReversibleProblem;
+import astar.search.Solution;
+import astar.util.BucketQueue;
+import astar.util.LongIntHashMap;
+
+// Bidirectional best-first search: one thread pushes forward from the start (AStarProblem), one pulls
+// backwards from the solved positions (PullProblem), each with its own open list and transposition table.
+// Both publish every new state in a shared lock-free table keyed by Zobrist hash; a side that finds a
+// state of the other side there (checked for equality, not just the hash) has met it, and both stop.
+// The solution is the forward path to the meeting state followed by the pulls, undone as pushes in
+// reverse order.
+//
+// The first meeting ends the search, so the solution is not necessarily push-optimal; its cost is the
+// sum of both paths. Needs a canonical problem (both sides must hash states alike) and as many targets
+// as boxes; otherwise the search falls back to single-threaded HDAStar, which keeps to the timeout.
+//
+// The meeting table has a fixed capacity; once it is full, new states are not published any more and the
+// sides keep searching on their own (each still ends the search on reaching its own goal).
+
+public class BidirectionalSearch {
+
+    private static final int TABLE_BITS = 21;    // meeting table slots
+    private static final int CHUNK_BITS = 12;    // nodes per storage chunk
+    private static final int MAX_CHUNKS = 1 << 16;
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    private final AStarProblem forward;
+    private final PullProblem backward;
+    private final int stride;
+    private final long deadline;
+    private final Side[] sides = new Side[2];
+
+    // shared meeting table: hash (0 = empty slot) and (side << 32 | node + 1) per slot
+    private final AtomicLongArray keys = new AtomicLongArray(1 << TABLE_BITS);
+    private final AtomicLongArray values = new AtomicLongArray(1 << TABLE_BITS);
+    private final int maxPublished = (1 << TABLE_BITS) / 4 * 3;
+    private volatile int published;
+
+    private volatile boolean done;
+    private volatile Throwable failure;
+
+    // the result, guarded by 'this'; a goal reached by one side alone has -1 as the other node
+    private int forwardNode = -1, backwardNode = -1;
+
+    private BidirectionalSearch(AStarProblem forward, long timeoutMillis) {
+        this.forward = forward;
+        this.backward = new PullProblem(forward);
+        this.stride = 1 + BoardCustom.boxCount;
+        this.deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+        sides[0] = new Side(0, forward, Collections.singletonList(forward.initialState()));
+        sides[1] = new Side(1, backward, backward.initialStates());
+    }
+
+    public static Solution<BoardCustom, TAction> search(AStarProblem prob) {
+        return search(prob, 0);
+    }
+
+    /**
+     * Searches from both ends; null if there is no solution or the time runs out.
+     * Falls back to single-threaded {@link HDAStar} (within the same time) where the pull search does not apply.
+     * @param prob
+     * @param timeoutMillis 0 for no limit
+     * @return
+     */
+    public static Solution<BoardCustom, TAction> search(AStarProblem prob, long timeoutMillis) {
+        if (!prob.isCanonical() || !PullProblem.isApplicable()) return HDAStar.search(prob, 1, timeoutMillis);
+        return new BidirectionalSearch(prob, timeoutMillis).run();
+    }
+
+    private Solution<BoardCustom, TAction> run() {
+        Thread[] threads = new Thread[sides.length];
+        for (int i = 0; i < sides.length; i++) {
+            threads[i] = new Thread(sides[i], i == 0 ? "bidi-forward" : "bidi-backward");
+        }
+        for (Thread thread : threads) thread.start();
+        // an interrupt stops both sides, they are still joined: neither may outlive the level data in BoardCustom
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    done = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        if (failure != null) throw new RuntimeException("bidirectional search failed", failure);
+        if (forwardNode == -1 && backwardNode == -1) return null;
+        return getSolution();
+    }
+
+    // Records the first result and stops both sides
+    private synchronized void offer(int forwardNode, int backwardNode) {
+        if (done) return;
+        this.forwardNode = forwardNode;
+        this.backwardNode = backwardNode;
+        done = true;
+    }
+
+    private Solution<BoardCustom, TAction> getSolution() {
+        // pushes to the meeting state
+        List<TAction> actions = new ArrayList<>();
+        int cost = 0;
+        if (forwardNode != -1) {
+            Side side = sides[0];
+            for (int node = forwardNode; side.parents[node] != -1; node = side.parents[node]) {
+                actions.add(side.actions.get(node));
+            }
+            Collections.reverse(actions);
+            cost += side.costs[forwardNode];
+        }
+
+        // then the pulls that lead there from a solved position, last one first, as pushes
+        BoardCustom state = forward.initialState().clone();
+        for (TAction action : actions) state = forward.result(state, action);
+        if (backwardNode != -1) {
+            Side side = sides[1];
+            for (int node = backwardNode; side.parents[node] != -1; node = side.parents[node]) {
+                TPull pull = (TPull) side.actions.get(node);
+                int player = pull.getPlayerTo();
+                TWalk walk = state.getWalkTo(BoardCustom.getX(player), BoardCustom.getY(player));
+                TAction push = new TWalkPushSequence(walk, TPush.getAction(pull.getDirection().opposite()));
+                actions.add(push);
+                state = forward.result(state, push);
+            }
+            cost += side.costs[backwardNode];
+        }
+
+        int searchedNodes = sides[0].searchedNodes + sides[1].searchedNodes;
+        return new Solution<>(forward.toPlayable(actions), state, cost, searchedNodes);
+    }
+
+    // Publishes a state; returns the other side's node with the same state, or -1
+    private int publish(int side, int node, BoardCustom state) {
+        long key = state.getHash() == 0 ? 1 : state.getHash();
+        int mask = keys.length() - 1;
+        int start = (int) (key ^ (key >>> 29)) & mask;
+
+        if (published < maxPublished) {
+            for (int slot = start; ; slot = (slot + 1) & mask) {
+                if (keys.get(slot) == 0 && keys.compareAndSet(slot, 0, key)) {
+                    values.set(slot, ((long) side << 32) | (node + 1));
+                    published++; // a racy count is good enough for a capacity bound
+                    break;
+                }
+            }
+        }
+
+        // entries are published before anybody probes, so of two sides adding the same state at once at
+        // least one sees the other; an entry whose value is not set yet belongs to a side still to probe
+        Side other = sides[1 - side];
+        for (int slot = start; ; slot = (slot + 1) & mask) {
+            long k = keys.get(slot);
+            if (k == 0) return -1;
+            if (k != key) continue;
+            long value = values.get(slot);
+            if (value == 0 || (int) (value >>> 32) == side) continue;
+            int otherNode = (int) value - 1;
+            if (state.matches(other.chunk(otherNode), other.offset(otherNode))) return otherNode;
+        }
+    }
+
+    // One direction of the search: best-first on cost + estimate
+    private class Side implements Runnable {
+        final int id;
+        final ReversibleProblem<BoardCustom, TAction> prob;
+        final List<BoardCustom> roots;
+        int searchedNodes;
+
+        // node storage; states are chunked so the other side can read published ones while this grows
+        final int[][] states = new int[MAX_CHUNKS][];
+        long[] hashes;
+        int[] boxesInPlace;
+        int[] costs;
+        int[] estimates;
+        int[] parents;
+        final List<TAction> actions = new ArrayList<>();
+        int nodeCount;
+
+        final LongIntHashMap table = new LongIntHashMap();
+        final BucketQueue open = new BucketQueue();
+
+        BoardCustom lookup;
+        final LongIntHashMap.ValueMatcher isLookup = node -> lookup.matches(chunk(node), offset(node));
+
+        Side(int id, ReversibleProblem<BoardCustom, TAction> prob, List<BoardCustom> roots) {
+            this.id = id;
+            this.prob = prob;
+            this.roots = roots;
+            allocate(1 << 12);
+        }
+
+        int[] chunk(int node) {
+            return states[node >>> CHUNK_BITS];
+        }
+
+        int offset(int node) {
+            return (node & ((1 << CHUNK_BITS) - 1)) * stride;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (BoardCustom root : roots) {
+                    if (insert(root.clone(), -1, null, 0)) return;
+                }
+                work();
+            } catch (Throwable e) {
+                failure = e;
+                done = true;
+            }
+        }
+
+        private void work() {
+            BoardCustom board = roots.get(0).clone();
+            int sinceCheck = 0;
+            while (!done && !open.isEmpty()) {
+                int f = open.peekPriority();
+                int curr = open.poll();
+                if (costs[curr] + estimates[curr] != f) continue; // stale entry, reached more cheaply since
+                if (++sinceCheck == DEADLINE_CHECK_INTERVAL) {
+                    sinceCheck = 0;
+                    if (System.currentTimeMillis() > deadline) done = true;
+                }
+
+                searchedNodes++;
+                board.load(chunk(curr), offset(curr), hashes[curr], boxesInPlace[curr]);
+                if (prob.isGoal(board)) {
+                    if (id == 0) offer(curr, -1);
+                    else offer(-1, curr);
+                    return;
+                }
+
+                for (TAction action : prob.actions(board)) {
+                    int nextCost = costs[curr] + (int) prob.cost(board, action);
+                    int player = prob.apply(board, action);
+                    boolean meeting = insert(board, curr, action, nextCost);
+                    prob.undo(board, action, player);
+                    if (meeting) return;
+                }
+            }
+            // no solution from this side; the forward side running dry means there is none at all
+            if (id == 0) done = true;
+        }
+
+        // Adds the node or improves its cost; true if it met the other side
+        private boolean insert(BoardCustom state, int parent, TAction action, int cost) {
+            lookup = state;
+            int node = table.get(state.getHash(), isLookup);
+            if (node == LongIntHashMap.NO_VALUE) {
+                double estimate = prob.estimate(state);
+                if (estimate > BoardAStar.MAX_ESTIMATE) return false;
+                node = addNode(state, parent, action, cost, (int) estimate);
+                table.add(state.getHash(), node);
+                open.add(node, cost + (int) estimate);
+
+                int other = publish(id, node, state);
+                if (other == -1) return false;
+                if (id == 0) offer(node, other);
+                else offer(other, node);
+                return true;
+            }
+            if (cost < costs[node]) {
+                costs[node] = cost;
+                parents[node] = parent;
+                actions.set(node, action);
+                open.add(node, cost + estimates[node]);
+            }
+            return false;
+        }
+
+        private int addNode(BoardCustom state, int parent, TAction action, int cost, int estimate) {
+            if (nodeCount == costs.length) allocate(nodeCount << 1);
+            int node = nodeCount++;
+            if (offset(node) == 0) states[node >>> CHUNK_BITS] = new int[(1 << CHUNK_BITS) * stride];
+            state.save(chunk(node), offset(node));
+            hashes[node] = state.getHash();
+            boxesInPlace[node] = state.boxInPlaceCount;
+            costs[node] = cost;
+            estimates[node] = estimate;
+            parents[node] = parent;
+            actions.add(action);
+            return node;
+        }
+
+        private void allocate(int capacity) {
+            if (costs == null) {
+                hashes = new long[capacity];
+                boxesInPlace = new int[capacity];
+                costs = new int[capacity];
+                estimates = new int[capacity];
+                parents = new int[capacity];
+                return;
+            }
+            hashes = Arrays.copyOf(hashes, capacity);
+            boxesInPlace = Arrays.copyOf(boxesInPlace, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            estimates = Arrays.copyOf(estimates, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+        }
+    }
+}
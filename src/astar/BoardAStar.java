@@ -0,0 +1,184 @@
+package astar;
+
+import java.util.*;
+
+import astar.actions.TAction;
+import astar.actions.TCompactPush;
+import astar.actions.TWalk;
+import astar.heuristics.MinCostMatchingHeuristic;
+import astar.search.Cancellation;
+import astar.search.Solution;
+import astar.util.BucketQueue;
+import astar.util.LongIntHashMap;
+import game.actions.EDirection;
+
+// A* search specialized for BoardCustom states.
+// Nodes live in flat primitive arrays instead of Node objects, the closed set is an open-addressing
+// table keyed by the 64-bit Zobrist hash (hits are verified against the stored state) and the open
+// list is bucketed by the integer f-cost.
+// Successors come from PushGenerator as packed pushes applied/undone on one scratch board, so nothing
+// is cloned; walks are planned only for the pushes on the solution path.
+// Every node also keeps its heuristic data (the box-target matching), so a child's estimate is a
+// repair of its parent's matching rather than a fresh computation.
+// An interrupt of the searching thread cancels the search (null).
+
+public class BoardAStar {
+
+    // estimates above this mean the heuristic considers the state dead; the matching reports dead states as INFINITE
+    static final int MAX_ESTIMATE = MinCostMatchingHeuristic.INFINITE - 1;
+
+    private final AStarProblem prob;
+    private final int stride; // ints per stored state
+    private final int heuristicStride; // ints of heuristic data per node
+
+    // node storage, indexed by node id
+    private int[] states;
+    private long[] hashes;
+    private int[] boxesInPlace;
+    private int[] costs;
+    private int[] estimates;
+    private int[] parents;
+    private long[] pushes;
+    private int[] heuristicData;
+    private int nodeCount;
+
+    private final LongIntHashMap table = new LongIntHashMap();
+    private final BucketQueue open = new BucketQueue();
+
+    // scratch board all nodes are expanded on
+    private BoardCustom board;
+    private final LongIntHashMap.ValueMatcher isBoard;
+
+    private BoardAStar(AStarProblem prob) {
+        this.prob = prob;
+        this.stride = 1 + BoardCustom.boxCount;
+        this.heuristicStride = prob.heuristicStateSize();
+        this.isBoard = node -> board.matches(states, node * stride);
+        allocate(1 << 12);
+    }
+
+    public static Solution<BoardCustom, TAction> search(AStarProblem prob) {
+        return new BoardAStar(prob).run();
+    }
+
+    private Solution<BoardCustom, TAction> run() {
+        int searchedNodes = 0;
+        board = prob.initialState().clone();
+
+        int estimate = prob.estimate(board, heuristicData, 0);
+        if (estimate > MAX_ESTIMATE) return null;
+        int start = addNode(board, -1, 0, 0, estimate);
+        table.add(board.getHash(), start);
+        open.add(start, estimate);
+
+        while (!open.isEmpty()) {
+            int f = open.peekPriority();
+            int curr = open.poll();
+            // stale entry, the node was reached more cheaply after this one was queued
+            if (costs[curr] + estimates[curr] != f) continue;
+
+            searchedNodes++;
+            if (Cancellation.isRequested(searchedNodes)) return null;
+            board.load(states, curr * stride, hashes[curr], boxesInPlace[curr]);
+
+            if (prob.isGoal(board)) {
+                return getSolution(curr, board.clone(), searchedNodes);
+            }
+
+            PushGenerator generator = PushGenerator.get();
+            int pushCount = prob.pushes(board);
+            for (int i = 0; i < pushCount; i++) {
+                long push = generator.get(i);
+                int nextCost = costs[curr] + prob.cost(push);
+                int boxFrom = board.positions[TCompactPush.getBoxIndex(push)];
+                int player = board.positions[0];
+                prob.apply(board, push);
+
+                int next = table.get(board.getHash(), isBoard);
+                if (next == LongIntHashMap.NO_VALUE) {
+                    // the data goes straight into the slot of the node about to be added
+                    if (nodeCount == costs.length) allocate(nodeCount << 1);
+                    estimate = prob.estimate(boxFrom, prob.destination(boxFrom, push),
+                                             heuristicData, curr * heuristicStride, heuristicData, nodeCount * heuristicStride);
+                    if (estimate <= MAX_ESTIMATE) {
+                        next = addNode(board, curr, push, nextCost, estimate);
+                        table.add(board.getHash(), next);
+                        open.add(next, nextCost + estimate);
+                    }
+                } else if (nextCost < costs[next]) {
+                    costs[next] = nextCost;
+                    parents[next] = curr;
+                    pushes[next] = push;
+                    open.add(next, nextCost + estimates[next]);
+                }
+
+                prob.undo(board, push, boxFrom, player);
+            }
+        }
+
+        return null;
+    }
+
+    private int addNode(BoardCustom board, int parent, long push, int cost, int estimate) {
+        if (nodeCount == costs.length) allocate(nodeCount << 1);
+        int node = nodeCount++;
+        board.save(states, node * stride);
+        hashes[node] = board.getHash();
+        boxesInPlace[node] = board.boxInPlaceCount;
+        costs[node] = cost;
+        estimates[node] = estimate;
+        parents[node] = parent;
+        pushes[node] = push;
+        return node;
+    }
+
+    private void allocate(int capacity) {
+        if (states == null) {
+            states = new int[capacity * stride];
+            hashes = new long[capacity];
+            boxesInPlace = new int[capacity];
+            costs = new int[capacity];
+            estimates = new int[capacity];
+            parents = new int[capacity];
+            pushes = new long[capacity];
+            heuristicData = new int[capacity * heuristicStride];
+            return;
+        }
+        states = Arrays.copyOf(states, capacity * stride);
+        hashes = Arrays.copyOf(hashes, capacity);
+        boxesInPlace = Arrays.copyOf(boxesInPlace, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        estimates = Arrays.copyOf(estimates, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        pushes = Arrays.copyOf(pushes, capacity);
+        heuristicData = Arrays.copyOf(heuristicData, capacity * heuristicStride);
+    }
+
+    private Solution<BoardCustom, TAction> getSolution(int goal, BoardCustom goalState, int searchedNodes) {
+        // collect pushes in the parent nodes in reversed order (from goal state to initial state)
+        List<Long> path = new ArrayList<>();
+        for (int node = goal; parents[node] != -1; node = parents[node]) {
+            path.add(pushes[node]);
+        }
+        Collections.reverse(path);
+
+        return new Solution<>(toActions(prob, path), goalState, costs[goal], searchedNodes);
+    }
+
+    // Replays pushes from the initial state, planning each walk from where the real player stands
+    static List<TAction> toActions(AStarProblem prob, List<Long> path) {
+        List<TAction> result = new ArrayList<>();
+        BoardCustom state = prob.initialState().clone();
+        BoardCustom real = prob.realInitialState().clone();
+        for (long push : path) {
+            EDirection dir = TCompactPush.getDirection(push);
+            int box = state.positions[TCompactPush.getBoxIndex(push)];
+            TWalk walk = real.getWalkTo(BoardCustom.getX(box) - dir.dX, BoardCustom.getY(box) - dir.dY);
+            TAction action = prob.toAction(walk, push);
+            action.perform(real);
+            result.add(action);
+            prob.apply(state, push);
+        }
+        return result;
+    }
+}
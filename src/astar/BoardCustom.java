@@ -3,12 +3,11 @@ package astar;
 import java.util.*;
 
 import astar.actions.TAction;
-import astar.actions.TMove;
 import astar.actions.TPush;
 import astar.actions.TTile;
 import astar.actions.TWalk;
 import astar.actions.TWalkPushSequence;
-import astar.detectors.DeadSquareDetector;
+import astar.detectors.DeadlockPipeline;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 import game.board.compact.CTile;
@@ -25,62 +24,142 @@ public class BoardCustom {
     public static int width;
     public static int height;
     public static int boxCount;
-    public static byte[][] tiles; // Static tiles (excluding box and player positions)
+    public static byte[] tiles; // Static tiles (excluding box and player positions), indexed by position
+    public static boolean[] targetTiles; // targetTiles[position] == true iff there is a target at position
     public static List<Integer> targets;
 
-    public static final int Y_MASK = (Integer.MAX_VALUE >> 16);
+    /**
+     * neighbours[position * 4 + dir.index] = position of the adjacent tile in direction 'dir', -1 if that is off the board.
+     */
+    public static int[] neighbours;
+
+    // Reusable per-thread arrays of the player floods in normalizePlayer() and getWalkTo()
+    private static final ThreadLocal<FloodScratch> floodScratch = ThreadLocal.withInitial(FloodScratch::new);
 	
     // Changing data representing a state
 	/**
+	 * Positions are flat tile indices: y * width + x.
+	 * 
 	 * PLAYER
-	 * [0] = player-x, player-y
+	 * [0] = player position
 	 * 
 	 * BOXES (for n>0)
-	 * [n] = nth-box-x (the first 16bits), nth-box-y (the second 16bits)
+	 * [n] = nth-box position
+	 * 
+	 * Boxes are kept sorted (ascending position), so two states are equal iff their arrays are equal.
 	 */
 	public int[] positions;
     public int boxInPlaceCount;
+
+    // Occupancy bitset of the boxes: bit 'position' is set iff a box stands there
+    private long[] boxBits;
 	
-	private Integer hash = null;
+	private long hash;
 
     public BoardCustom(BoardCompact boardCompact) {
+        // Dimensions first, packing depends on them
+        BoardCustom.width = boardCompact.width();
+        BoardCustom.height = boardCompact.height();
+		BoardCustom.boxCount = boardCompact.boxCount;
+
         int elements = 1 + boardCompact.boxCount;
         boxInPlaceCount = boardCompact.boxInPlaceCount;
 		positions = new int[elements];
 		positions[0] = getPacked(boardCompact.playerX, boardCompact.playerY);
 		int index = 1;
         BoardCustom.targets = new ArrayList<>();
-		for (int x = 0; x < boardCompact.width(); ++x) {
-			for (int y = 0; y < boardCompact.height(); ++y) {
+        BoardCustom.targetTiles = new boolean[width * height];
+        BoardCustom.tiles = new byte[width * height];
+		for (int x = 0; x < width; ++x) {
+			for (int y = 0; y < height; ++y) {
 				if (CTile.isSomeBox(boardCompact.tile(x, y))) {
 					positions[index] = getPacked(x, y);
 					++index;
 				}
                 if (CTile.forSomeBox(boardCompact.tile(x, y))) {
                     BoardCustom.targets.add(getPacked(x, y));
+                    BoardCustom.targetTiles[getPacked(x, y)] = true;
                 }
+				BoardCustom.tiles[getPacked(x, y)] = computeCustomStaticTile(boardCompact, x, y);
 			}
 		}
+        computeNeighbours();
 
-        BoardCustom.width = boardCompact.width();
-        BoardCustom.height = boardCompact.height();
-		BoardCustom.boxCount = boardCompact.boxCount;
-		
-        BoardCustom.tiles = new byte[width][height];
-		for (int x = 0; x < width; ++x) {
-			for (int y = 0; y < height; ++y) {
-				BoardCustom.tiles[x][y] = computeCustomStaticTile(boardCompact, x, y);
-			}
-		}
+        Arrays.sort(positions, 1, positions.length);
+        boxBits = new long[(width * height + 63) >>> 6];
+        for (int i = 1; i < positions.length; i++) setBoxBit(positions[i]);
         ZobristKeys.initializeKeys();
+        hash = computeHash();
     }
 
-    private BoardCustom(int[] positions, Integer hash, int boxInPlaceCount) {
+    private BoardCustom(int[] positions, long[] boxBits, long hash, int boxInPlaceCount) {
         this.positions = positions.clone();
+        this.boxBits = boxBits.clone();
         this.hash = hash;
         this.boxInPlaceCount = boxInPlaceCount;
     }
 
+    private static void computeNeighbours() {
+        neighbours = new int[width * height * 4];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (EDirection dir : EDirection.arrows()) {
+                    int nx = x + dir.dX;
+                    int ny = y + dir.dY;
+                    boolean onBoard = nx >= 0 && nx < width && ny >= 0 && ny < height;
+                    neighbours[getPacked(x, y) * 4 + dir.index] = onBoard ? getPacked(nx, ny) : -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Position next to 'position' in direction 'dir', -1 if off the board.
+     * @param position
+     * @param dir
+     * @return
+     */
+    public static int neighbour(int position, EDirection dir) {
+        return neighbours[position * 4 + dir.index];
+    }
+
+    /**
+     * Copies player and box positions into a flat pool (1 + boxCount ints starting at 'offset').
+     * @param pool
+     * @param offset
+     */
+    public void save(int[] pool, int offset) {
+        System.arraycopy(positions, 0, pool, offset, positions.length);
+    }
+
+    /**
+     * Overwrites this state with one previously stored by {@link #save(int[], int)}; lets search reuse a single board instance.
+     * @param pool
+     * @param offset
+     * @param hash
+     * @param boxInPlaceCount
+     */
+    public void load(int[] pool, int offset, long hash, int boxInPlaceCount) {
+        for (int i = 1; i < positions.length; i++) clearBoxBit(positions[i]);
+        System.arraycopy(pool, offset, positions, 0, positions.length);
+        for (int i = 1; i < positions.length; i++) setBoxBit(positions[i]);
+        this.hash = hash;
+        this.boxInPlaceCount = boxInPlaceCount;
+    }
+
+    /**
+     * Does this state equal the one stored at 'offset' by {@link #save(int[], int)}? Exact comparison, O(boxes).
+     * @param pool
+     * @param offset
+     * @return
+     */
+    public boolean matches(int[] pool, int offset) {
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] != pool[offset + i]) return false;
+        }
+        return true;
+    }
+
     public int getPlayerX() {
         return BoardCustom.getX(this.positions[0]);
     }
@@ -89,13 +168,15 @@ public class BoardCustom {
         return BoardCustom.getY(this.positions[0]);
     }
 
-    public List<TAction> getActions(boolean[][] isSimpleDeadlock) {
+    public List<TAction> getActions() {
         List<TAction> result = new ArrayList<>();
 
-        // Add all pushes from the player's current position
-        result.addAll(getPushesWithoutDeadlock(getPlayerX(), getPlayerY(), isSimpleDeadlock));
-        // Add all WalkPush actions
-        result.addAll(getWalkPushActions(isSimpleDeadlock));
+        // All pushes the player can reach (plain TPush from its current position, walk+push otherwise)
+        PushGenerator generator = PushGenerator.get();
+        int count = generator.generate(this);
+        for (int i = 0; i < count; i++) {
+            result.add(generator.toAction(this, generator.get(i)));
+        }
 
         // System.out.println("POSSIBLE ACTIONS");
         // for (TAction a : result) {
@@ -106,11 +187,11 @@ public class BoardCustom {
         return result;
     }
 
-    public List<TWalkPushSequence> getWalkPushActions(boolean[][] isSimpleDeadlock) {
+    public List<TWalkPushSequence> getWalkPushActions() {
         List<TWalkPushSequence> result = new ArrayList<>();
         List<TWalk> walkActions = getWalkActions();
         for (TWalk walk : walkActions) {
-            for (TPush push : getPushesWithoutDeadlock(walk.getDestinationX(), walk.getDestinationY(), isSimpleDeadlock)) {
+            for (TPush push : getPushesWithoutDeadlock(walk.getDestinationX(), walk.getDestinationY())) {
                 result.add(new TWalkPushSequence(walk, push));
             }
         }
@@ -118,17 +199,15 @@ public class BoardCustom {
     }
 
     // Get a list of pushes from a position that do not result in a deadlock
-    private List<TPush> getPushesWithoutDeadlock(int x, int y, boolean[][] isSimpleDeadlock) {
+    private List<TPush> getPushesWithoutDeadlock(int x, int y) {
         List<TPush> result = new ArrayList<>();
+        DeadlockPipeline deadlocks = DeadlockPipeline.get();
         for (TPush push : TPush.getActions()) { 
             EDirection dir = push.getDirection();
             boolean isPossible = TPush.isPushPossible(this, x, y, dir);
             if (!isPossible                                                             // Illegal move
-                 || isSimpleDeadlock[x+dir.dX+dir.dX][y+dir.dY+dir.dY]                  // New box position can't reach any target
-                //  || DeadSquareDetector.isBipartiteDeadlockSimple(dir, x, y, this)       // A target won't have any box that could reach it DISABLED (dont occur in aymeric level set)
-                //  || DeadSquareDetector.isBipartiteDeadlock(dir, x, y, this)             // Every target can be matched and there are enough boxes to distribute DISABLED (dont occur in aymeric level set)
-                 || DeadSquareDetector.isFreezeDeadlock(dir, x, y, this)
-               ) continue;     // Freeze deadlocks
+                 || deadlocks.isDeadlock(this, getPacked(x+dir.dX, y+dir.dY), getPacked(x+dir.dX+dir.dX, y+dir.dY+dir.dY))
+               ) continue;
             result.add(push);
         }
         
@@ -220,10 +299,23 @@ public class BoardCustom {
     }
 
     public boolean isBox(int position) {
-        for (int i = 1; i < positions.length; i++) {
-            if (position == positions[i]) return true;
-        }
-        return false;
+        return (boxBits[position >>> 6] & (1L << position)) != 0;
+    }
+
+    // Box flags of 'count' (at most 32) consecutive positions starting at 'position', bit 0 = 'position'
+    public int getBoxBits(int position, int count) {
+        int word = position >>> 6, shift = position & 63;
+        long bits = boxBits[word] >>> shift;
+        if (shift + count > 64 && word + 1 < boxBits.length) bits |= boxBits[word + 1] << (64 - shift);
+        return (int) (bits & ((1L << count) - 1)); // long mask, an int one would be 0 for count == 32
+    }
+
+    private void setBoxBit(int position) {
+        boxBits[position >>> 6] |= 1L << position;
+    }
+
+    private void clearBoxBit(int position) {
+        boxBits[position >>> 6] &= ~(1L << position);
     }
 
     public static boolean isTarget(int x, int y) {
@@ -232,7 +324,7 @@ public class BoardCustom {
     }
 
     public static boolean isTarget(int position) {
-        return BoardCustom.targets.contains(position);
+        return BoardCustom.targetTiles[position];
     }
 
     public boolean isPlayer(int x, int y) {
@@ -240,7 +332,7 @@ public class BoardCustom {
     }
 
     /**
-	 * Fair warning: by moving the player you're invalidating {@link #hashCode()}...
+	 * Moves the player, updating the Zobrist hash incrementally.
 	 * @param sourceTileX
 	 * @param sourceTileY
 	 * @param targetTileX
@@ -248,74 +340,197 @@ public class BoardCustom {
 	 */
 	public void movePlayer(int sourceTileX, int sourceTileY, int targetTileX, int targetTileY) {
 		// Remove current position from hash
-        hash ^= ZobristKeys.playerKEYS[getX(positions[0])][getY(positions[0])];
+        hash ^= ZobristKeys.playerKEYS[positions[0]];
 
         positions[0] = getPacked(targetTileX, targetTileY);
 
         // Add new position to hash
-        hash ^= ZobristKeys.playerKEYS[getX(positions[0])][getY(positions[0])];
+        hash ^= ZobristKeys.playerKEYS[positions[0]];
 	}
 
+    /**
+     * Places the player at 'position' (packed), updating the hash; no validation.
+     * @param position
+     */
+    public void setPlayer(int position) {
+        hash ^= ZobristKeys.playerKEYS[positions[0]];
+        positions[0] = position;
+        hash ^= ZobristKeys.playerKEYS[positions[0]];
+    }
+
+    /**
+     * Moves the player to the top-left-most tile (smallest y, then smallest x) of the area it can reach without pushing.
+     * States that differ only in where the player stands inside the same area become equal.
+     */
+    public void normalizePlayer() {
+        FloodScratch scratch = floodScratch.get();
+        int epoch = scratch.nextEpoch();
+        int[] visited = scratch.stamp;
+        int[] stack = scratch.queue;
+        int size = 0;
+        int best = positions[0];
+        visited[best] = epoch;
+        stack[size++] = best;
+
+        while (size > 0) {
+            int curr = stack[--size];
+            if (curr < best) best = curr;
+            for (int d = 0; d < 4; d++) {
+                int next = neighbours[curr * 4 + d];
+                if (next == -1 || visited[next] == epoch || !isWalkable(next)) continue;
+                visited[next] = epoch;
+                stack[size++] = next;
+            }
+        }
+
+        setPlayer(best);
+    }
+
+    /**
+     * Shortest walk of the player to [x;y] that does not push anything; null if the tile cannot be reached.
+     * @param x
+     * @param y
+     * @return
+     */
+    public TWalk getWalkTo(int x, int y) {
+        int start = positions[0];
+        int goal = getPacked(x, y);
+        FloodScratch scratch = floodScratch.get();
+        int epoch = scratch.nextEpoch();
+        int[] reached = scratch.stamp; // prev[p] is valid where reached[p] == epoch
+        int[] prev = scratch.prev;
+        int[] queue = scratch.queue;
+        int head = 0, tail = 0;
+        reached[start] = epoch;
+        prev[start] = start;
+        queue[tail++] = start;
+
+        while (head < tail && reached[goal] != epoch) {
+            int curr = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int next = neighbours[curr * 4 + d];
+                if (next == -1 || reached[next] == epoch || !isWalkable(next)) continue;
+                reached[next] = epoch;
+                prev[next] = curr;
+                queue[tail++] = next;
+            }
+        }
+        if (reached[goal] != epoch) return null;
+
+        int length = 0;
+        for (int p = goal; p != start; p = prev[p]) length++;
+        int[] positionsX = new int[length];
+        int[] positionsY = new int[length];
+        for (int p = goal; p != start; p = prev[p]) {
+            length--;
+            positionsX[length] = getX(p);
+            positionsY[length] = getY(p);
+        }
+        return TWalk.fromPositions(this, getPlayerX(), getPlayerY(), positionsX, positionsY);
+    }
+
+    // Per-tile arrays of a flood, valid only where stamp[i] == epoch; resized when the level size changes
+    private static class FloodScratch {
+        private int cells = -1;
+        private int epoch;
+        private int[] stamp;
+        private int[] prev;
+        private int[] queue;
+
+        // Starts a new flood over the current level; returns its epoch
+        private int nextEpoch() {
+            int size = width * height;
+            if (size != cells) {
+                cells = size;
+                stamp = new int[size];
+                prev = new int[size];
+                queue = new int[size];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+            return epoch;
+        }
+    }
+
     public void moveBox(int sourceTileX, int sourceTileY, int targetTileX, int targetTileY) {
-        int sourcePosition = getPacked(sourceTileX, sourceTileY);
-        int targetPosition = getPacked(targetTileX, targetTileY);
-		
-		if (BoardCustom.isTarget(targetTileX, targetTileY)) {
+        moveBox(getPacked(sourceTileX, sourceTileY), getPacked(targetTileX, targetTileY));
+    }
+
+    /**
+     * Moves the box at 'sourcePosition' to 'targetPosition', keeping the boxes sorted and the hash and bitset up to date.
+     * @param sourcePosition
+     * @param targetPosition
+     */
+    public void moveBox(int sourcePosition, int targetPosition) {
+		if (targetTiles[targetPosition]) {
 			++boxInPlaceCount;
 		}
 
-        int index = -1;
-        for (int i = 1; i < positions.length; i++) {
-            if (positions[i] != sourcePosition) continue;
-            index = i;
-            break;
-        }
+        int index = Arrays.binarySearch(positions, 1, positions.length, sourcePosition);
 
         // Remove current position from hash
-        hash ^= ZobristKeys.boxKEYS[getX(positions[index])][getY(positions[index])];
+        hash ^= ZobristKeys.boxKEYS[sourcePosition];
+        clearBoxBit(sourcePosition);
 
-        // Overwrite box position
+        // Overwrite box position, shifting neighbours to keep the boxes sorted
+        while (index > 1 && positions[index-1] > targetPosition) {
+            positions[index] = positions[index-1];
+            --index;
+        }
+        while (index < positions.length-1 && positions[index+1] < targetPosition) {
+            positions[index] = positions[index+1];
+            ++index;
+        }
         positions[index] = targetPosition;
 
         // Add new position to hash
-        hash ^= ZobristKeys.boxKEYS[getX(positions[index])][getY(positions[index])];
+        hash ^= ZobristKeys.boxKEYS[targetPosition];
+        setBoxBit(targetPosition);
 		
-		if (BoardCustom.isTarget(sourceTileX, sourceTileY)) {
+		if (targetTiles[sourcePosition]) {
 			--boxInPlaceCount;
 		}
     }
 
     private List<Integer> getWalkableNeighbours(int position) {
-        List<Integer> neighbours = new ArrayList<>();
-        int x = getX(position);
-        int y = getY(position);
-        for (TMove m : TMove.getActions()) { // Get moves in all directions
-            int neighbourPosition = m.isPossible(this, x, y); // Check if move in a direction possible
-            if (neighbourPosition == -1) continue; // Not possible, ignore this direction
-            neighbours.add(neighbourPosition); // Possible, add neighbour position
+        List<Integer> result = new ArrayList<>();
+        for (int d = 0; d < 4; d++) { // Get moves in all directions
+            int next = neighbours[position * 4 + d];
+            if (next == -1 || !TTile.isFree(tile(next))) continue; // Not possible, ignore this direction
+            result.add(next); // Possible, add neighbour position
         }
 
-        return neighbours;
+        return result;
     }
 
     public List<Integer> getNonWallNeighbours(int position) {
-        List<Integer> neighbours = new ArrayList<>();
-        int x = getX(position);
-        int y = getY(position);
-        for (TMove m : TMove.getActions()) { // Get moves in all directions
-            EDirection dir = m.getDirection();
-            if (TMove.isOnBoard(this, x, y, m.getDirection()) && !TTile.isWall(tile(x+dir.dX, y+dir.dY))) {
-                neighbours.add(getPacked(x+dir.dX, y+dir.dY));
+        List<Integer> result = new ArrayList<>();
+        for (int d = 0; d < 4; d++) { // Get moves in all directions
+            int next = neighbours[position * 4 + d];
+            if (next != -1 && !TTile.isWall(tiles[next])) {
+                result.add(next);
             }
         }
 
-        return neighbours;
+        return result;
+    }
+
+    /**
+     * Neither a wall nor a box (the player's own tile counts as walkable).
+     * @param position
+     * @return
+     */
+    public boolean isWalkable(int position) {
+        return !TTile.isWall(tiles[position]) && !isBox(position);
     }
 
 
     @Override
 	public BoardCustom clone() {
-        BoardCustom result = new BoardCustom(this.positions, this.hashCode(), this.boxInPlaceCount);
+        BoardCustom result = new BoardCustom(this.positions, this.boxBits, this.hash, this.boxInPlaceCount);
         return result;
     }
 
@@ -371,12 +586,16 @@ public class BoardCustom {
     }
 
     public byte tile(int x, int y) {
-        byte tile = BoardCustom.tiles[x][y];
+        return tile(getPacked(x, y));
+    }
+
+    public byte tile(int position) {
+        byte tile = BoardCustom.tiles[position];
 		
-        if (isBox(x, y)) {
+        if (isBox(position)) {
 			tile |= TTile.BOX_FLAG;
 		}
-        else if (isPlayer(x, y)) {
+        else if (position == positions[0]) {
 			tile |= TTile.PLAYER_FLAG;
 		}
 		
@@ -387,13 +606,13 @@ public class BoardCustom {
     // ------------------------------------ STATE MINIMAL ------------------------------------
 	
 	/**
-	 * Packs [x;y] into single integer.
+	 * Packs [x;y] into a single flat tile index (y * width + x).
 	 * @param x
 	 * @param y
 	 * @return
 	 */
 	public static int getPacked(int x, int y) {
-		return x << 16 | y;
+		return y * width + x;
 	}
 	
 	/**
@@ -402,7 +621,7 @@ public class BoardCustom {
 	 * @return
 	 */
 	public static int getX(int packed) {
-		return packed >> 16;
+		return packed % width;
 	}
 	
 	/**
@@ -411,22 +630,29 @@ public class BoardCustom {
 	 * @return
 	 */
 	public static int getY(int packed) {
-		return packed & Y_MASK;
+		return packed / width;
 	}
 
-    @Override
-	public int hashCode() {
-		if (hash == null) {
-            hash = 0;
-
-            hash ^= ZobristKeys.playerKEYS[getX(positions[0])][getY(positions[0])];
+    private long computeHash() {
+        long result = ZobristKeys.playerKEYS[positions[0]];
 
-            for (int i = 1; i < positions.length; ++i) {
-                int boxPosition = positions[i];
-                hash ^= ZobristKeys.boxKEYS[getX(boxPosition)][getY(boxPosition)];
-            }
+        for (int i = 1; i < positions.length; ++i) {
+            result ^= ZobristKeys.boxKEYS[positions[i]];
         }
-		return hash;
+        return result;
+    }
+
+    /**
+     * 64-bit Zobrist hash of the state; maintained incrementally by {@link #movePlayer(int, int, int, int)} and {@link #moveBox(int, int, int, int)}.
+     * @return
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
 	}
 	
 	@Override
@@ -435,13 +661,12 @@ public class BoardCustom {
 		if (this == obj) return true;
         if (!(obj instanceof BoardCustom)) return false;
         BoardCustom other = (BoardCustom) obj;
-        if(positions[0] != other.positions[0]) return false;
-        if (positions.length != other.positions.length) return false;
-		return obj.hashCode() == hashCode();
+        if (hash != other.hash) return false;
+		return Arrays.equals(positions, other.positions);
 	}
 	
 	@Override
 	public String toString() {
-		return "BoardCustom[" + hashCode() + "]";
+		return "BoardCustom[" + Long.toHexString(hash) + "]";
 	}
 }
@@ -0,0 +1,381 @@
+package astar;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import astar.actions.TAction;
+import astar.actions.TCompactPush;
+import astar.search.Solution;
+import astar.util.BucketQueue;
+import astar.util.LongIntHashMap;
+
+// Hash-distributed A* (HDA*) over BoardCustom states.
+// Every state is owned by one worker, picked from its Zobrist hash. A worker keeps the open list,
+// transposition table and node storage of its own states only (same layout as BoardAStar), expands
+// them and sends successors owned by other workers in batches through lock-free queues.
+//
+// Termination: 'active' counts running workers plus batches sent but not yet received. A worker
+// leaves it when it has nothing better than the incumbent to expand and has flushed its batches;
+// a batch keeps it above zero until the owner has inserted its nodes. Zero means no work is left
+// anywhere, and the incumbent (cheapest goal found) is optimal.
+//
+// Nodes keep their heuristic data like in BoardAStar; successors the worker owns itself are estimated
+// incrementally from their parent's, received ones from scratch (the data is not shipped in batches).
+
+public class HDAStar {
+
+    private static final int BATCH_SIZE = 64;            // nodes per message
+    private static final int FLUSH_INTERVAL = 32;        // expansions between flushes of partial batches
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final AStarProblem prob;
+    private final int stride;
+    private final int heuristicStride;
+    private final Worker[] workers;
+    private final long deadline;
+
+    private final AtomicInteger active;
+    private volatile boolean done;
+    private volatile Throwable failure;
+
+    // incumbent, guarded by 'this'
+    private volatile int bestCost = Integer.MAX_VALUE;
+    private int bestWorker = -1;
+    private int bestNode = -1;
+
+    private HDAStar(AStarProblem prob, int threads, long timeoutMillis) {
+        this.prob = prob;
+        this.stride = 1 + BoardCustom.boxCount;
+        this.heuristicStride = prob.heuristicStateSize();
+        this.deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new Worker(i);
+        this.active = new AtomicInteger(threads);
+    }
+
+    public static Solution<BoardCustom, TAction> search(AStarProblem prob, int threads) {
+        return search(prob, threads, 0);
+    }
+
+    /**
+     * Optimal search on 'threads' workers; null if there is no solution.
+     * If the time runs out, the cheapest solution found so far (not necessarily optimal) or null.
+     * @param prob
+     * @param threads
+     * @param timeoutMillis 0 for no limit
+     * @return
+     */
+    public static Solution<BoardCustom, TAction> search(AStarProblem prob, int threads, long timeoutMillis) {
+        return new HDAStar(prob, threads, timeoutMillis).run();
+    }
+
+    private Solution<BoardCustom, TAction> run() {
+        BoardCustom start = prob.initialState().clone();
+        workers[owner(start.getHash())].insert(start, -1, -1, 0, 0, -1);
+
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            threads[i] = new Thread(workers[i], "hda-" + i);
+            workers[i].thread = threads[i];
+        }
+        for (Thread thread : threads) thread.start();
+        // an interrupt stops the workers, they are still joined: none may outlive the level data in BoardCustom
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    finish();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        if (failure != null) throw new RuntimeException("HDA* worker failed", failure);
+        if (bestWorker == -1) return null;
+        return getSolution();
+    }
+
+    private int owner(long hash) {
+        return (int) ((hash >>> 32) % workers.length);
+    }
+
+    private synchronized void offerGoal(int worker, int node, int cost) {
+        if (cost >= bestCost) return;
+        bestCost = cost;
+        bestWorker = worker;
+        bestNode = node;
+    }
+
+    private void finish() {
+        done = true;
+        for (Worker worker : workers) LockSupport.unpark(worker.thread);
+    }
+
+    private Solution<BoardCustom, TAction> getSolution() {
+        List<Long> path = new ArrayList<>();
+        int searchedNodes = 0;
+        for (Worker worker : workers) searchedNodes += worker.searchedNodes;
+
+        int w = bestWorker, node = bestNode;
+        BoardCustom goalState = prob.initialState().clone();
+        workers[w].load(goalState, node);
+        while (workers[w].parentWorkers[node] != -1) {
+            Worker worker = workers[w];
+            path.add(worker.pushes[node]);
+            w = worker.parentWorkers[node];
+            node = worker.parentNodes[node];
+        }
+        Collections.reverse(path);
+
+        return new Solution<>(BoardAStar.toActions(prob, path), goalState, bestCost, searchedNodes);
+    }
+
+    // Nodes for one worker; a record per node, in parallel arrays
+    private static class Batch {
+        final int[] ints;   // positions (stride ints), boxes in place, cost, parent worker, parent node
+        final long[] longs; // hash, push
+        int size;
+
+        Batch(int stride) {
+            ints = new int[BATCH_SIZE * (stride + 4)];
+            longs = new long[BATCH_SIZE * 2];
+        }
+    }
+
+    private class Worker implements Runnable {
+        final int id;
+        Thread thread;
+        final ConcurrentLinkedQueue<Batch> inbox = new ConcurrentLinkedQueue<>();
+        final Batch[] outgoing = new Batch[workers.length];
+        int searchedNodes;
+
+        // node storage, indexed by node id
+        int[] states;
+        long[] hashes;
+        int[] boxesInPlace;
+        int[] costs;
+        int[] estimates;
+        int[] parentWorkers;
+        int[] parentNodes;
+        long[] pushes;
+        int[] heuristicData;
+        int nodeCount;
+
+        final LongIntHashMap table = new LongIntHashMap();
+        final BucketQueue open = new BucketQueue();
+
+        // 'board' is expanded, 'incoming' holds received nodes while they are looked up
+        final BoardCustom board = prob.initialState().clone();
+        final BoardCustom incoming = prob.initialState().clone();
+        BoardCustom lookup;
+        final LongIntHashMap.ValueMatcher isLookup = node -> lookup.matches(states, node * stride);
+
+        Worker(int id) {
+            this.id = id;
+            allocate(1 << 12);
+        }
+
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (Throwable e) {
+                failure = e;
+                finish();
+            }
+        }
+
+        private void work() {
+            int sinceFlush = 0;
+            while (!done) {
+                receive();
+
+                if (hasWork()) {
+                    expand(open.poll());
+                    if (++sinceFlush == FLUSH_INTERVAL) {
+                        sinceFlush = 0;
+                        flush();
+                        if (System.currentTimeMillis() > deadline) finish();
+                    }
+                    continue;
+                }
+
+                flush();
+                if (!inbox.isEmpty()) continue;
+
+                // idle until a batch arrives or everybody is idle
+                if (active.decrementAndGet() == 0) {
+                    finish();
+                    return;
+                }
+                while (!done && inbox.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    if (System.currentTimeMillis() > deadline) finish();
+                }
+                if (done) return;
+                active.incrementAndGet();
+            }
+        }
+
+        // Is there a node that could still lead to a cheaper goal than the incumbent?
+        private boolean hasWork() {
+            while (!open.isEmpty()) {
+                int f = open.peekPriority();
+                if (f >= bestCost) return false;
+                int node = open.peek();
+                if (costs[node] + estimates[node] == f) return true;
+                open.poll(); // stale entry, the node was reached more cheaply after this one was queued
+            }
+            return false;
+        }
+
+        private void expand(int curr) {
+            searchedNodes++;
+            load(board, curr);
+
+            if (prob.isGoal(board)) {
+                offerGoal(id, curr, costs[curr]);
+                return;
+            }
+
+            PushGenerator generator = PushGenerator.get();
+            int pushCount = prob.pushes(board);
+            for (int i = 0; i < pushCount; i++) {
+                long push = generator.get(i);
+                int nextCost = costs[curr] + prob.cost(push);
+                int boxFrom = board.positions[TCompactPush.getBoxIndex(push)];
+                int player = board.positions[0];
+                prob.apply(board, push);
+
+                int owner = owner(board.getHash());
+                if (owner == id) insert(board, id, curr, push, nextCost, boxFrom);
+                else send(owner, board, curr, push, nextCost);
+
+                prob.undo(board, push, boxFrom, player);
+            }
+        }
+
+        // Adds the node or improves its cost; the estimate is computed only for new states, incrementally
+        // if the parent is one of this worker's nodes ('boxFrom' is where the pushed box came from)
+        void insert(BoardCustom state, int parentWorker, int parentNode, long push, int cost, int boxFrom) {
+            lookup = state;
+            int node = table.get(state.getHash(), isLookup);
+            if (node == LongIntHashMap.NO_VALUE) {
+                // the data goes straight into the slot of the node about to be added
+                if (nodeCount == costs.length) allocate(nodeCount << 1);
+                int estimate;
+                if (parentWorker == id && boxFrom != -1) {
+                    int boxTo = prob.destination(boxFrom, push);
+                    estimate = prob.estimate(boxFrom, boxTo, heuristicData, parentNode * heuristicStride,
+                                             heuristicData, nodeCount * heuristicStride);
+                } else {
+                    estimate = prob.estimate(state, heuristicData, nodeCount * heuristicStride);
+                }
+                if (estimate > BoardAStar.MAX_ESTIMATE) return;
+                node = addNode(state, parentWorker, parentNode, push, cost, estimate);
+                table.add(state.getHash(), node);
+                open.add(node, cost + estimate);
+            } else if (cost < costs[node]) {
+                costs[node] = cost;
+                parentWorkers[node] = parentWorker;
+                parentNodes[node] = parentNode;
+                pushes[node] = push;
+                open.add(node, cost + estimates[node]);
+            }
+        }
+
+        private void send(int owner, BoardCustom state, int parentNode, long push, int cost) {
+            Batch batch = outgoing[owner];
+            if (batch == null) batch = outgoing[owner] = new Batch(stride);
+
+            int offset = batch.size * (stride + 4);
+            state.save(batch.ints, offset);
+            batch.ints[offset + stride] = state.boxInPlaceCount;
+            batch.ints[offset + stride + 1] = cost;
+            batch.ints[offset + stride + 2] = id;
+            batch.ints[offset + stride + 3] = parentNode;
+            batch.longs[batch.size * 2] = state.getHash();
+            batch.longs[batch.size * 2 + 1] = push;
+
+            if (++batch.size == BATCH_SIZE) post(owner);
+        }
+
+        private void post(int owner) {
+            Batch batch = outgoing[owner];
+            outgoing[owner] = null;
+            active.incrementAndGet(); // before the batch becomes visible, see the termination note
+            workers[owner].inbox.offer(batch);
+            LockSupport.unpark(workers[owner].thread);
+        }
+
+        private void flush() {
+            for (int i = 0; i < outgoing.length; i++) {
+                if (outgoing[i] != null && outgoing[i].size > 0) post(i);
+            }
+        }
+
+        private void receive() {
+            Batch batch;
+            while ((batch = inbox.poll()) != null) {
+                for (int i = 0; i < batch.size; i++) {
+                    int offset = i * (stride + 4);
+                    incoming.load(batch.ints, offset, batch.longs[i * 2], batch.ints[offset + stride]);
+                    insert(incoming, batch.ints[offset + stride + 2], batch.ints[offset + stride + 3],
+                           batch.longs[i * 2 + 1], batch.ints[offset + stride + 1], -1);
+                }
+                active.decrementAndGet();
+            }
+        }
+
+        void load(BoardCustom state, int node) {
+            state.load(states, node * stride, hashes[node], boxesInPlace[node]);
+        }
+
+        private int addNode(BoardCustom state, int parentWorker, int parentNode, long push, int cost, int estimate) {
+            if (nodeCount == costs.length) allocate(nodeCount << 1);
+            int node = nodeCount++;
+            state.save(states, node * stride);
+            hashes[node] = state.getHash();
+            boxesInPlace[node] = state.boxInPlaceCount;
+            costs[node] = cost;
+            estimates[node] = estimate;
+            parentWorkers[node] = parentWorker;
+            parentNodes[node] = parentNode;
+            pushes[node] = push;
+            return node;
+        }
+
+        private void allocate(int capacity) {
+            if (states == null) {
+                states = new int[capacity * stride];
+                hashes = new long[capacity];
+                boxesInPlace = new int[capacity];
+                costs = new int[capacity];
+                estimates = new int[capacity];
+                parentWorkers = new int[capacity];
+                parentNodes = new int[capacity];
+                pushes = new long[capacity];
+                heuristicData = new int[capacity * heuristicStride];
+                return;
+            }
+            states = Arrays.copyOf(states, capacity * stride);
+            hashes = Arrays.copyOf(hashes, capacity);
+            boxesInPlace = Arrays.copyOf(boxesInPlace, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            estimates = Arrays.copyOf(estimates, capacity);
+            parentWorkers = Arrays.copyOf(parentWorkers, capacity);
+            parentNodes = Arrays.copyOf(parentNodes, capacity);
+            pushes = Arrays.copyOf(pushes, capacity);
+            heuristicData = Arrays.copyOf(heuristicData, capacity * heuristicStride);
+        }
+    }
+}
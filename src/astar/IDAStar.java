@@ -0,0 +1,126 @@
+package astar;
+
+import java.util.*;
+
+import astar.search.*;
+
+// Iterative-deepening A* search
+// Depth-first searches bounded by f = g + h, the bound growing to the smallest f that exceeded it.
+// A single state is walked with apply/undo, so memory grows with the solution depth only.
+// The optional transposition table has a fixed size and prunes states already reached at no higher
+// cost in the current iteration; without it only cycles along the current path are cut.
+// An interrupt of the searching thread cancels the search (null).
+
+public class IDAStar<S, A> {
+
+  private final ReversibleProblem<S, A> prob;
+  private final TranspositionTable table; // null if disabled
+
+  private S state;
+  private List<A> path = new ArrayList<>();
+  private long[] pathKeys = new long[64]; // keys of the states on the current path (cycle check)
+  private double bound;
+  private double nextBound;
+  private int iteration;
+  private int searchedNodes;
+  private boolean cancelled; // the thread was interrupted
+
+  private IDAStar(ReversibleProblem<S, A> prob, int tableBits) {
+    this.prob = prob;
+    this.table = tableBits > 0 ? new TranspositionTable(tableBits) : null;
+  }
+
+  public static <S, A> Solution<S, A> search(ReversibleProblem<S, A> prob) {
+    return search(prob, 0);
+  }
+
+  // tableBits: the transposition table holds 2^tableBits entries, 0 disables it
+  public static <S, A> Solution<S, A> search(ReversibleProblem<S, A> prob, int tableBits) {
+    return new IDAStar<>(prob, tableBits).run();
+  }
+
+  private Solution<S, A> run() {
+    state = prob.copy(prob.initialState());
+    bound = prob.estimate(state);
+
+    while (bound < Double.MAX_VALUE) {
+      iteration++;
+      nextBound = Double.POSITIVE_INFINITY;
+      double cost = dfs(0, 0);
+      if (cancelled) return null;
+      if (cost >= 0) return new Solution<>(new ArrayList<>(path), prob.copy(state), cost, searchedNodes);
+      bound = nextBound;
+    }
+
+    return null;
+  }
+
+  // Returns the solution cost if a goal was reached (path then leads to it), -1 otherwise
+  private double dfs(double cost, int depth) {
+    if (cancelled) return -1;
+    double f = cost + prob.estimate(state);
+    if (f > bound) {
+      nextBound = Math.min(nextBound, f);
+      return -1;
+    }
+    if (prob.isGoal(state)) return cost;
+
+    long key = prob.key(state);
+    if (table != null) {
+      if (!table.visit(key, cost, iteration)) return -1;
+    } else if (isOnPath(key, depth)) {
+      return -1;
+    }
+    if (depth == pathKeys.length) pathKeys = Arrays.copyOf(pathKeys, depth << 1);
+    pathKeys[depth] = key;
+    searchedNodes++;
+    if (Cancellation.isRequested(searchedNodes)) cancelled = true;
+
+    for (A action : prob.actions(state)) {
+      double nextCost = cost + prob.cost(state, action);
+      int token = prob.apply(state, action);
+      path.add(action);
+
+      double result = dfs(nextCost, depth + 1);
+      if (result >= 0) return result;
+
+      path.remove(path.size() - 1);
+      prob.undo(state, action, token);
+    }
+
+    return -1;
+  }
+
+  private boolean isOnPath(long key, int depth) {
+    for (int i = 0; i < depth; i++) {
+      if (pathKeys[i] == key) return true;
+    }
+    return false;
+  }
+
+  // Direct-mapped table of (key, cost, iteration); a new entry always replaces the old one.
+  // Entries are matched by key only, a 64-bit collision could prune a state wrongly.
+  private static class TranspositionTable {
+    private final long[] keys;
+    private final double[] costs;
+    private final int[] iterations; // 0 = empty
+    private final int mask;
+
+    public TranspositionTable(int bits) {
+      keys = new long[1 << bits];
+      costs = new double[1 << bits];
+      iterations = new int[1 << bits];
+      mask = (1 << bits) - 1;
+    }
+
+    // Records the state; false if it was already reached at most this cheaply in this iteration
+    public boolean visit(long key, double cost, int iteration) {
+      int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+      if (iterations[i] == iteration && keys[i] == key && costs[i] <= cost) return false;
+      keys[i] = key;
+      costs[i] = cost;
+      iterations[i] = iteration;
+      return true;
+    }
+  }
+}
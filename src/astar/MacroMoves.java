@@ -0,0 +1,384 @@
+package astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import astar.actions.TAction;
+import astar.actions.TCompactPush;
+import astar.actions.TMacroMove;
+import astar.actions.TTile;
+import astar.actions.TWalk;
+import astar.detectors.DeadlockPipeline;
+import game.actions.EDirection;
+
+// Macro moves: several pushes of one box taken as a single search step, rewritten into the pushes of a
+// PushGenerator (see TCompactPush for the encoding).
+//
+// Tunnel macros: a box pushed into a one-wide tunnel, the player following it, is pushed on until it
+// leaves the tunnel, reaches a target or would be blocked or dead. Stopping halfway only blocks the tunnel,
+// so this keeps push counts optimal.
+//
+// Goal-room macros: a goal room is an area with at least two targets, no wall-free way around its single
+// entrance (a tunnel tile) and not holding the player at the start. Pulling the boxes out of the filled
+// room one by one gives a packing order and, per box, the moves that take it from the entrance to its
+// target. While the room holds exactly the first boxes of that order, a box pushed onto the entrance goes
+// straight to the next target. That commits to one filling order and one path, so these macros may cost
+// optimality and are meant for the non-optimal searches.
+
+public class MacroMoves {
+
+    private static final int MAX_ROOM = 64; // tiles of a goal room, bounds its planning
+
+    private final boolean[] isTunnel; // [position * 2 + axis], axis 0 vertical, 1 horizontal: walls on both other sides
+
+    private final Room[] roomAt; // by entrance position
+    private final List<Macro> macros = new ArrayList<>();
+
+    public MacroMoves(BoardCustom initialState) {
+        int size = BoardCustom.width * BoardCustom.height;
+        isTunnel = new boolean[size * 2];
+        for (int position = 0; position < size; position++) {
+            if (TTile.isWall(BoardCustom.tiles[position])) continue;
+            for (int axis = 0; axis < 2; axis++) {
+                isTunnel[position * 2 + axis] = isWall(BoardCustom.neighbours[position * 4 + axis + 1])
+                                               && isWall(BoardCustom.neighbours[position * 4 + (axis + 3) % 4]);
+            }
+        }
+        roomAt = new Room[size];
+        findGoalRooms(initialState.positions[0]);
+    }
+
+    private static boolean isWall(int position) {
+        return position == -1 || TTile.isWall(BoardCustom.tiles[position]);
+    }
+
+    // Whether a box at 'position' pushed in 'dir' can't leave the line of the push
+    private boolean isTunnel(int position, int dir) {
+        return isTunnel[position * 2 + (dir & 1)];
+    }
+
+    public int getRoomCount() {
+        int count = 0;
+        for (Room room : roomAt) if (room != null) count++;
+        return count;
+    }
+
+    /**
+     * Rewrites the first 'count' pushes of 'generator', generated for 'board', into macro moves where they start one.
+     * @param board
+     * @param generator
+     * @param count
+     * @param tunnels whether to apply tunnel macros
+     * @param rooms whether to apply goal-room macros
+     */
+    public void expand(BoardCustom board, PushGenerator generator, int count, boolean tunnels, boolean rooms) {
+        int[] neighbours = BoardCustom.neighbours;
+        DeadlockPipeline deadlocks = tunnels ? DeadlockPipeline.get() : null;
+        for (int i = 0; i < count; i++) {
+            long push = generator.get(i);
+            int dir = (int) (push & 3);
+            int box = board.positions[TCompactPush.getBoxIndex(push)];
+            int boxTo = neighbours[box * 4 + dir];
+
+            Room room = roomAt[boxTo];
+            if (rooms && room != null && room.dir == dir) {
+                int step = room.getPackedCount(board);
+                if (step >= 0) {
+                    generator.set(i, TCompactPush.withMacro(push, room.firstMacro + step));
+                    continue;
+                }
+            }
+            if (tunnels) {
+                int run = getTunnelRun(board, box, dir, deadlocks);
+                if (run > 0) generator.set(i, TCompactPush.withRun(push, run));
+            }
+        }
+    }
+
+    // Pushes after the first one that take the box at 'box' through its tunnel; the board is restored afterwards
+    private int getTunnelRun(BoardCustom board, int box, int dir, DeadlockPipeline deadlocks) {
+        int[] neighbours = BoardCustom.neighbours;
+        int player = box, from = neighbours[box * 4 + dir];
+        int run = 0;
+        while (run < TCompactPush.MAX_RUN && isTunnel(player, dir) && isTunnel(from, dir) && !BoardCustom.isTarget(from)) {
+            int to = neighbours[from * 4 + dir];
+            if (to == -1 || !board.isWalkable(to)) break;
+
+            // the deadlock checks need the box where it stands before the next push
+            board.moveBox(box, from);
+            boolean dead = deadlocks.isDeadlock(board, from, to);
+            board.moveBox(from, box);
+            if (dead) break;
+
+            run++;
+            player = from;
+            from = to;
+        }
+        return run;
+    }
+
+    // Where a push with a goal-room macro leaves the box
+    public int getTarget(long push) {
+        return macros.get(TCompactPush.getMacro(push)).target;
+    }
+
+    public int getPushes(long push) {
+        return macros.get(TCompactPush.getMacro(push)).pushes;
+    }
+
+    // Player moves after the walk
+    public int getMoves(long push) {
+        return macros.get(TCompactPush.getMacro(push)).moves.length;
+    }
+
+    /**
+     * Performs a push with a goal-room macro: teleports the box to its target and the player to where the macro leaves it.
+     * @param board
+     * @param push
+     */
+    public void perform(BoardCustom board, long push) {
+        Macro macro = macros.get(TCompactPush.getMacro(push));
+        board.moveBox(board.positions[TCompactPush.getBoxIndex(push)], macro.target);
+        board.setPlayer(macro.player);
+    }
+
+    /**
+     * The macro move (tunnel or goal-room) of 'push' as a regular action.
+     * @param walk the walk to the tile behind the box
+     * @param push
+     * @return
+     */
+    public TAction toAction(TWalk walk, long push) {
+        int macro = TCompactPush.getMacro(push);
+        if (macro >= 0) return new TMacroMove(walk, macros.get(macro).moves, macros.get(macro).isPush);
+
+        EDirection[] moves = new EDirection[TCompactPush.getRun(push) + 1];
+        boolean[] isPush = new boolean[moves.length];
+        Arrays.fill(moves, TCompactPush.getDirection(push));
+        Arrays.fill(isPush, true);
+        return new TMacroMove(walk, moves, isPush);
+    }
+
+    private static class Room {
+        final int dir;           // push direction through the entrance
+        final int[] tiles;       // the room and its entrance
+        final int[] order;       // targets in packing order
+        final int firstMacro;    // macro of order[0], the others follow
+
+        Room(int dir, int[] tiles, int[] order, int firstMacro) {
+            this.dir = dir;
+            this.tiles = tiles;
+            this.order = order;
+            this.firstMacro = firstMacro;
+        }
+
+        // Number of packed boxes if the room holds exactly a proper prefix of the packing order, -1 otherwise
+        int getPackedCount(BoardCustom board) {
+            int packed = 0;
+            while (packed < order.length && board.isBox(order[packed])) packed++;
+            if (packed == order.length) return -1;
+            int boxes = 0;
+            for (int tile : tiles) {
+                if (board.isBox(tile) && ++boxes > packed) return -1;
+            }
+            return packed;
+        }
+    }
+
+    private static class Macro {
+        final int target;
+        final int player;        // player position after the macro
+        final int pushes;
+        final EDirection[] moves; // the push onto the entrance first
+        final boolean[] isPush;
+
+        Macro(int target, int player, EDirection[] moves, boolean[] isPush) {
+            this.target = target;
+            this.player = player;
+            this.moves = moves;
+            this.isPush = isPush;
+            int count = 0;
+            for (boolean push : isPush) if (push) count++;
+            this.pushes = count;
+        }
+    }
+
+    // Goal rooms, entered through tunnel tiles; of nested candidates along a corridor, the innermost entrance is kept
+    private void findGoalRooms(int playerStart) {
+        int size = BoardCustom.width * BoardCustom.height;
+        int[] neighbours = BoardCustom.neighbours;
+        Map<Integer, int[]> best = new HashMap<>(); // lowest target of the room -> { entrance, dir, room size }
+        Map<Integer, int[]> tilesOf = new HashMap<>();
+        int[] mark = new int[size];
+        int[] queue = new int[size];
+        int epoch = 0;
+
+        for (int entrance = 0; entrance < size; entrance++) {
+            if (TTile.isWall(BoardCustom.tiles[entrance]) || BoardCustom.isTarget(entrance)) continue;
+            for (int dir = 0; dir < 4; dir++) {
+                int outside = neighbours[entrance * 4 + (dir ^ 2)];
+                int inside = neighbours[entrance * 4 + dir];
+                if (!isTunnel(entrance, dir) || isWall(outside) || isWall(inside)) continue;
+
+                // flood the room side without the entrance
+                epoch++;
+                mark[entrance] = epoch;
+                int head = 0, tail = 0, targets = 0, lowestTarget = Integer.MAX_VALUE;
+                boolean closed = true;
+                mark[inside] = epoch;
+                queue[tail++] = inside;
+                while (head < tail && closed) {
+                    int curr = queue[head++];
+                    if (curr == playerStart || curr == outside || tail > MAX_ROOM) closed = false;
+                    if (BoardCustom.isTarget(curr)) {
+                        targets++;
+                        lowestTarget = Math.min(lowestTarget, curr);
+                    }
+                    for (int d = 0; d < 4; d++) {
+                        int next = neighbours[curr * 4 + d];
+                        if (isWall(next) || mark[next] == epoch) continue;
+                        mark[next] = epoch;
+                        queue[tail++] = next;
+                    }
+                }
+                if (!closed || targets < 2) continue;
+
+                int[] candidate = best.get(lowestTarget);
+                if (candidate != null && candidate[2] <= tail) continue;
+                best.put(lowestTarget, new int[] { entrance, dir, tail });
+                tilesOf.put(lowestTarget, Arrays.copyOf(queue, tail));
+            }
+        }
+
+        for (Map.Entry<Integer, int[]> entry : best.entrySet()) {
+            int[] candidate = entry.getValue();
+            planRoom(candidate[0], candidate[1], tilesOf.get(entry.getKey()));
+        }
+    }
+
+    // Packing order by pulling the boxes out of the filled room; rooms that can't be emptied get no macros
+    private void planRoom(int entrance, int dir, int[] roomTiles) {
+        int[] neighbours = BoardCustom.neighbours;
+        int outside = neighbours[entrance * 4 + (dir ^ 2)];
+
+        // local tiles: the room, then the entrance and the tile in front of it
+        int n = roomTiles.length + 2;
+        int[] tiles = Arrays.copyOf(roomTiles, n);
+        tiles[n - 2] = entrance;
+        tiles[n - 1] = outside;
+        Map<Integer, Integer> local = new HashMap<>();
+        for (int i = 0; i < n; i++) local.put(tiles[i], i);
+        int[] adjacent = new int[n * 4];
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < 4; d++) {
+                Integer next = local.get(neighbours[tiles[i] * 4 + d]);
+                adjacent[i * 4 + d] = next == null ? -1 : next;
+            }
+        }
+
+        boolean[] isBox = new boolean[n];
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < n - 2; i++) {
+            if (BoardCustom.isTarget(tiles[i])) {
+                isBox[i] = true;
+                remaining.add(i);
+            }
+        }
+
+        // removing a box never blocks another one, so any box that can leave may go first
+        List<Macro> removed = new ArrayList<>();
+        List<Integer> removedTargets = new ArrayList<>();
+        while (!remaining.isEmpty()) {
+            Macro macro = null;
+            int box = -1;
+            for (int candidate : remaining) {
+                isBox[candidate] = false;
+                macro = pullOut(candidate, dir, n, adjacent, isBox, tiles);
+                isBox[candidate] = true;
+                if (macro != null) {
+                    box = candidate;
+                    break;
+                }
+            }
+            if (macro == null) return;
+            isBox[box] = false;
+            remaining.remove(Integer.valueOf(box));
+            removed.add(macro);
+            removedTargets.add(tiles[box]);
+        }
+
+        int[] order = new int[removed.size()];
+        int firstMacro = macros.size();
+        if (firstMacro + order.length > TCompactPush.MAX_MACROS - 1) return;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = removedTargets.get(order.length - 1 - i);
+            macros.add(removed.get(order.length - 1 - i));
+        }
+        roomAt[entrance] = new Room(dir, Arrays.copyOf(tiles, n - 1), order, firstMacro);
+    }
+
+    // Moves taking the box at local tile 'box' to the entrance with the player in front of it, as a forward macro
+    // from (box on the entrance, player outside) back to the target; breadth-first over (box, player) in reverse
+    private Macro pullOut(int box, int dir, int n, int[] adjacent, boolean[] isBox, int[] tiles) {
+        int entrance = n - 2, outside = n - 1;
+        int[] parent = new int[n * n];
+        Arrays.fill(parent, -2);
+        int[] queue = new int[n * n];
+        int head = 0, tail = 0;
+        for (int player = 0; player < n; player++) {
+            if (player == box || isBox[player]) continue;
+            parent[box * n + player] = -1;
+            queue[tail++] = box * n + player;
+        }
+
+        int goal = entrance * n + outside;
+        while (head < tail && parent[goal] == -2) {
+            int state = queue[head++];
+            int b = state / n, p = state % n;
+            for (int d = 0; d < 4; d++) {
+                int next = adjacent[p * 4 + d];
+                if (next == -1 || next == b || isBox[next]) continue;
+                // walk, and pull if the box is on the other side (the box never goes out)
+                int walk = b * n + next;
+                if (parent[walk] == -2) {
+                    parent[walk] = state;
+                    queue[tail++] = walk;
+                }
+                int pull = p * n + next;
+                if (adjacent[p * 4 + (d ^ 2)] == b && p != outside && parent[pull] == -2) {
+                    parent[pull] = state;
+                    queue[tail++] = pull;
+                }
+            }
+        }
+        if (parent[goal] == -2) return null;
+
+        // the parents of the goal are the forward moves
+        List<EDirection> moves = new ArrayList<>();
+        List<Boolean> pushes = new ArrayList<>();
+        int state = goal;
+        while (parent[state] != -1) {
+            int next = parent[state];
+            int from = tiles[state % n], to = tiles[next % n];
+            for (EDirection d : EDirection.arrows()) {
+                if (BoardCustom.neighbour(from, d) == to) moves.add(d);
+            }
+            pushes.add(state / n != next / n);
+            state = next;
+        }
+
+        // the push onto the entrance comes first
+        EDirection[] result = new EDirection[moves.size() + 1];
+        boolean[] isPush = new boolean[result.length];
+        result[0] = EDirection.arrows()[dir];
+        isPush[0] = true;
+        for (int i = 0; i < moves.size(); i++) {
+            result[i + 1] = moves.get(i);
+            isPush[i + 1] = pushes.get(i);
+        }
+        return new Macro(tiles[box], tiles[state % n], result, isPush);
+    }
+}
@@ -0,0 +1,196 @@
+package astar;
+
+import java.util.*;
+
+import astar.actions.TAction;
+import astar.actions.TPull;
+import astar.heuristics.MinCostMatchingHeuristic;
+import astar.heuristics.PushDistanceTable;
+import astar.search.ReversibleProblem;
+import game.actions.EDirection;
+
+// The level played backwards: boxes start on the targets and are pulled until they stand where the
+// level starts them, with the player in the area it starts in. Pulls undo pushes, so a pull path
+// from a solved position to the start, read backwards, is a solution.
+//
+// States are kept canonical as in AStarProblem (player at the top-left-most tile of its area), so a
+// state here and the same state of a canonical forward search have the same Zobrist hash. The solved
+// position has one start state per area the player may end up in. Costs count pulls. The estimate is
+// the min-cost matching of boxes to start positions over pull distances; a box on a tile no start
+// position can be pushed to is never pulled there.
+
+public class PullProblem implements ReversibleProblem<BoardCustom, TAction> {
+    final BoardCustom goal;            // the forward initial state, canonical
+    final List<BoardCustom> starts;    // boxes on the targets, one per player area
+
+    final PushDistanceTable distanceTable; // pushes from the start positions of the boxes
+    final ThreadLocal<MinCostMatchingHeuristic> matchingHeuristic;
+
+    /**
+     * The reverse of the canonical forward problem 'forward'; see {@link #isApplicable()}.
+     * @param forward
+     */
+    public PullProblem(AStarProblem forward) {
+        if (!isApplicable()) throw new IllegalArgumentException("pull search needs as many targets as boxes");
+        this.goal = forward.initialState().clone();
+        this.goal.normalizePlayer();
+
+        int[] sources = new int[BoardCustom.boxCount];
+        for (int i = 1; i < goal.positions.length; i++) sources[i - 1] = goal.positions[i];
+        this.distanceTable = new PushDistanceTable(sources);
+        this.matchingHeuristic = ThreadLocal.withInitial(() -> new MinCostMatchingHeuristic(distanceTable));
+        this.starts = solvedStates();
+    }
+
+    // A solved position is only known if every target takes a box
+    public static boolean isApplicable() {
+        return BoardCustom.boxCount == BoardCustom.targets.size();
+    }
+
+    // Boxes moved onto the targets, the player in each area of the rest
+    private List<BoardCustom> solvedStates() {
+        BoardCustom solved = goal.clone();
+        Deque<Integer> empty = new ArrayDeque<>();
+        for (int target : BoardCustom.targets) {
+            if (!solved.isBox(target)) empty.add(target);
+        }
+        for (int box : goal.getBoxes()) {
+            if (!BoardCustom.isTarget(box)) solved.moveBox(box, empty.poll());
+        }
+
+        List<BoardCustom> result = new ArrayList<>();
+        Flood seen = Flood.get();
+        seen.clear();
+        for (int position = 0; position < BoardCustom.width * BoardCustom.height; position++) {
+            if (seen.reached(position) || !solved.isWalkable(position)) continue;
+            seen.fill(solved, position);
+            BoardCustom start = solved.clone();
+            start.setPlayer(position); // the first tile of an area in scan order is its top-left-most one
+            result.add(start);
+        }
+        return result;
+    }
+
+    // Tiles the player reaches from some starts; thread-local, a tile is reached where stamp[i] == epoch
+    private static class Flood {
+        private static final ThreadLocal<Flood> floods = ThreadLocal.withInitial(Flood::new);
+
+        private int cells = -1;
+        private int epoch;
+        private int[] stamp;
+        private int[] queue;
+
+        static Flood get() {
+            return floods.get();
+        }
+
+        // Forgets all reached tiles; sized for the current level
+        void clear() {
+            int size = BoardCustom.width * BoardCustom.height;
+            if (size != cells) {
+                cells = size;
+                stamp = new int[size];
+                queue = new int[size];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean reached(int position) {
+            return stamp[position] == epoch;
+        }
+
+        // Adds the area the player reaches from 'from' without pushing
+        void fill(BoardCustom board, int from) {
+            int head = 0, tail = 0;
+            stamp[from] = epoch;
+            queue[tail++] = from;
+            while (head < tail) {
+                int curr = queue[head++];
+                for (int d = 0; d < 4; d++) {
+                    int next = BoardCustom.neighbours[curr * 4 + d];
+                    if (next == -1 || stamp[next] == epoch || !board.isWalkable(next)) continue;
+                    stamp[next] = epoch;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    public BoardCustom initialState() {
+        return starts.get(0);
+    }
+
+    // All solved positions, one per player area
+    public List<BoardCustom> initialStates() {
+        return starts;
+    }
+
+    // The canonical forward start, where the pulls have to end
+    public BoardCustom goalState() {
+        return goal;
+    }
+
+    public List<TAction> actions(BoardCustom state) {
+        Flood reached = Flood.get();
+        reached.clear();
+        reached.fill(state, state.positions[0]);
+
+        List<TAction> result = new ArrayList<>();
+        int[] neighbours = BoardCustom.neighbours;
+        for (int i = 1; i < state.positions.length; i++) {
+            int box = state.positions[i];
+            for (EDirection dir : EDirection.arrows()) {
+                int to = neighbours[box * 4 + dir.index];
+                if (to == -1 || !reached.reached(to)) continue;                         // Player can't get there
+                int beyond = neighbours[to * 4 + dir.index];
+                if (beyond == -1 || !state.isWalkable(beyond)) continue;                // No room to step back
+                if (distanceTable.getMinDistance(to) == PushDistanceTable.UNREACHABLE) continue; // No box starts anywhere that leads here
+                result.add(new TPull(box, dir));
+            }
+        }
+        return result;
+    }
+
+    public BoardCustom result(BoardCustom s, TAction action) {
+        BoardCustom newState = s.clone();
+        action.perform(newState);
+        newState.normalizePlayer();
+        return newState;
+    }
+
+    public int apply(BoardCustom state, TAction action) {
+        action.perform(state);
+        int player = state.positions[0];
+        state.normalizePlayer();
+        return player;
+    }
+
+    public void undo(BoardCustom state, TAction action, int player) {
+        state.setPlayer(player);
+        action.reverse(state);
+    }
+
+    public long key(BoardCustom state) {
+        return state.getHash();
+    }
+
+    public BoardCustom copy(BoardCustom state) {
+        return state.clone();
+    }
+
+    public boolean isGoal(BoardCustom state) {
+        return state.equals(goal);
+    }
+
+    public double cost(BoardCustom state, TAction action) {
+        return 1;
+    }
+
+    public double estimate(BoardCustom state) {
+        return matchingHeuristic.get().estimate(state);
+    }
+}
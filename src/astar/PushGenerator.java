@@ -0,0 +1,194 @@
+package astar;
+
+import java.util.Arrays;
+
+import astar.actions.TAction;
+import astar.actions.TCompactPush;
+import astar.actions.TPush;
+import astar.actions.TWalk;
+import astar.actions.TWalkPushSequence;
+import astar.detectors.DeadlockPipeline;
+import astar.heuristics.PackingOrder;
+import game.actions.EDirection;
+
+// Successor generation for BoardCustom without per-state allocation.
+// One BFS from the player per state fills reusable (thread-local) int arrays; every box side the
+// player can reach yields a push, emitted as a TCompactPush descriptor into an internal buffer.
+// Walk paths are only materialized on request (getWalk), e.g. when a solution is extracted.
+
+public class PushGenerator {
+
+    private static final ThreadLocal<PushGenerator> generators = ThreadLocal.withInitial(PushGenerator::new);
+
+    public static PushGenerator get() {
+        return generators.get();
+    }
+
+    private int cells = -1;
+
+    // all per-tile arrays are indexed by position and valid only where stamp[i] == epoch
+    private int epoch;
+    private int[] stamp;
+    private int[] dist;
+    private byte[] parentDir; // direction of the last step into the tile
+    private int[] queue;
+
+    private long[] pushes = new long[64];
+    private long[] deferred = new long[64];
+    private int pushCount;
+
+    private void ensureCapacity() {
+        int size = BoardCustom.width * BoardCustom.height;
+        if (size == cells) return;
+        cells = size;
+        stamp = new int[size];
+        dist = new int[size];
+        parentDir = new byte[size];
+        queue = new int[size];
+        epoch = 0;
+    }
+
+    private void nextEpoch() {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Generates all pushes of 'board' that pass the deadlock checks of {@link DeadlockPipeline}; read them with {@link #get(int)}.
+     * The result is overwritten by the next call on the same thread.
+     * @param board
+     * @return number of generated pushes
+     */
+    public int generate(BoardCustom board) {
+        DeadlockPipeline deadlocks = DeadlockPipeline.get();
+        ensureCapacity();
+        nextEpoch();
+        int[] neighbours = BoardCustom.neighbours;
+        int[] positions = board.positions;
+
+        flood(board, positions[0]);
+
+        pushCount = 0;
+        for (int i = 1; i < positions.length; i++) {
+            int box = positions[i];
+            for (EDirection dir : EDirection.arrows()) {
+                int target = neighbours[box * 4 + dir.index];
+                int side = neighbours[box * 4 + (dir.index ^ 2)]; // opposite direction
+                if (side == -1 || target == -1) continue;
+
+                if (stamp[side] != epoch                                       // Player can't get behind the box
+                 || !board.isWalkable(target)                                  // Wall or box in the way
+                 || deadlocks.isDeadlock(board, box, target)                   // Dead square, bipartite, freeze, pattern, ... deadlocks
+                   ) continue;
+
+                if (pushCount == pushes.length) pushes = Arrays.copyOf(pushes, pushCount << 1);
+                pushes[pushCount++] = TCompactPush.pack(i, dir, dist[side]);
+            }
+        }
+        return pushCount;
+    }
+
+    public long get(int i) {
+        return pushes[i];
+    }
+
+    // Replaces a generated push, e.g. by a macro move starting with it
+    public void set(int i, long push) {
+        pushes[i] = push;
+    }
+
+    // Whether the player could reach 'position' in the last generated state
+    public boolean isReachable(int position) {
+        return stamp[position] == epoch;
+    }
+
+    /**
+     * Drops the pushes of boxes whose index is not set in 'keep', preserving the order of the others.
+     * @param keep indexed by box index
+     * @return number of remaining pushes
+     */
+    public int retainBoxes(boolean[] keep) {
+        int count = 0;
+        for (int i = 0; i < pushCount; i++) {
+            if (keep[TCompactPush.getBoxIndex(pushes[i])]) pushes[count++] = pushes[i];
+        }
+        pushCount = count;
+        return count;
+    }
+
+    /**
+     * Moves the pushes that put a box on a target walling in an empty one (see {@link PackingOrder}) behind the others,
+     * preserving the order within both groups.
+     * @param board the board the pushes were generated for
+     * @param problem resolves where macros leave the box
+     * @param order
+     * @param count pushes to reorder
+     */
+    public void deferOutOfOrder(BoardCustom board, AStarProblem problem, PackingOrder order, int count) {
+        if (deferred.length < count) deferred = new long[pushes.length];
+        int first = 0, late = 0;
+        for (int i = 0; i < count; i++) {
+            long push = pushes[i];
+            int boxTo = problem.destination(board.positions[TCompactPush.getBoxIndex(push)], push);
+            if (order.isOutOfOrder(board, boxTo)) deferred[late++] = push;
+            else pushes[first++] = push;
+        }
+        System.arraycopy(deferred, 0, pushes, first, late);
+    }
+
+    // BFS over tiles that are neither walls nor boxes
+    private void flood(BoardCustom board, int start) {
+        int[] neighbours = BoardCustom.neighbours;
+        int head = 0, tail = 0;
+        stamp[start] = epoch;
+        dist[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int curr = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int next = neighbours[curr * 4 + d];
+                if (next == -1 || stamp[next] == epoch || !board.isWalkable(next)) continue;
+                stamp[next] = epoch;
+                dist[next] = dist[curr] + 1;
+                parentDir[next] = (byte) d;
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    /**
+     * Walk to the tile behind the box pushed by 'push', reconstructed from the last {@link #generate(BoardCustom)}.
+     * @param board the board the pushes were generated for
+     * @param push
+     * @return
+     */
+    public TWalk getWalk(BoardCustom board, long push) {
+        EDirection pushDir = TCompactPush.getDirection(push);
+        int box = board.positions[TCompactPush.getBoxIndex(push)];
+        int side = BoardCustom.neighbour(box, pushDir.opposite());
+
+        EDirection[] path = new EDirection[dist[side]];
+        int curr = side;
+        for (int i = path.length - 1; i >= 0; i--) {
+            EDirection dir = EDirection.arrows()[parentDir[curr]];
+            path[i] = dir;
+            curr = BoardCustom.neighbour(curr, dir.opposite());
+        }
+        return new TWalk(BoardCustom.getX(side), BoardCustom.getY(side), path);
+    }
+
+    /**
+     * The push as a regular action: {@link TPush} if the player already stands behind the box, walk+push otherwise.
+     * @param board the board the pushes were generated for
+     * @param push
+     * @return
+     */
+    public TAction toAction(BoardCustom board, long push) {
+        TPush tpush = TPush.getAction(TCompactPush.getDirection(push));
+        if (TCompactPush.getWalkCost(push) == 0) return tpush;
+        return new TWalkPushSequence(getWalk(board, push), tpush);
+    }
+}
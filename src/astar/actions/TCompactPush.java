@@ -0,0 +1,110 @@
+package astar.actions;
+
+import astar.BoardCustom;
+import game.actions.EDirection;
+
+/**
+ * A walk+push packed into a single long, as emitted by {@link astar.PushGenerator}.
+ *
+ * Bits 0-1: push direction ({@link EDirection#index}), bits 2-11: index of the pushed box in {@link BoardCustom#positions},
+ * bits 12-31: length of the walk to the tile behind the box, bits 32-43: further pushes in the same direction (tunnel macro),
+ * bits 44-59: goal-room macro id + 1, 0 = none (see {@link astar.MacroMoves}).
+ *
+ * The walk itself is not stored; it is re-planned only when a solution is turned into moves.
+ */
+public class TCompactPush {
+
+    private static final int BOX_SHIFT = 2;
+    private static final int WALK_SHIFT = 12;
+    private static final int RUN_SHIFT = 32;
+    private static final int MACRO_SHIFT = 44;
+
+    public static final int MAX_BOXES = 1 << (WALK_SHIFT - BOX_SHIFT);
+    public static final int MAX_RUN = (1 << (MACRO_SHIFT - RUN_SHIFT)) - 1;
+    public static final int MAX_MACROS = (1 << 16) - 1;
+
+    public static long pack(int boxIndex, EDirection dir, int walkCost) {
+        return dir.index | ((long) boxIndex << BOX_SHIFT) | ((long) walkCost << WALK_SHIFT);
+    }
+
+    public static EDirection getDirection(long push) {
+        return EDirection.arrows()[(int) (push & 3)];
+    }
+
+    public static int getBoxIndex(long push) {
+        return (int) (push >>> BOX_SHIFT) & (MAX_BOXES - 1);
+    }
+
+    public static int getWalkCost(long push) {
+        return (int) (push >>> WALK_SHIFT) & ((1 << (RUN_SHIFT - WALK_SHIFT)) - 1);
+    }
+
+    // Pushes after the first one, all in the same direction
+    public static int getRun(long push) {
+        return (int) (push >>> RUN_SHIFT) & MAX_RUN;
+    }
+
+    public static long withRun(long push, int run) {
+        return push & ~((long) MAX_RUN << RUN_SHIFT) | (long) run << RUN_SHIFT;
+    }
+
+    // Goal-room macro id, -1 for a plain push (or push run)
+    public static int getMacro(long push) {
+        return (int) (push >>> MACRO_SHIFT) - 1;
+    }
+
+    public static long withMacro(long push, int macro) {
+        return push & ~((long) MAX_MACROS << MACRO_SHIFT) | (long) (macro + 1) << MACRO_SHIFT;
+    }
+
+    /**
+     * Walk and push steps together; goal-room macros are resolved by {@link astar.MacroMoves}.
+     * @param push
+     * @return
+     */
+    public static int getSteps(long push) {
+        return getWalkCost(push) + 1 + getRun(push);
+    }
+
+    /**
+     * Where the box ends up; goal-room macros are resolved by {@link astar.MacroMoves}.
+     * @param boxFrom packed box position before the push
+     * @param push
+     * @return
+     */
+    public static int getDestination(int boxFrom, long push) {
+        int dir = (int) (push & 3);
+        int result = BoardCustom.neighbours[boxFrom * 4 + dir];
+        for (int i = getRun(push); i > 0; i--) result = BoardCustom.neighbours[result * 4 + dir];
+        return result;
+    }
+
+    /**
+     * Teleports the player behind the box and pushes it (as far as the run goes); no validation.
+     * @param board
+     * @param push
+     */
+    public static void perform(BoardCustom board, long push) {
+        int box = board.positions[getBoxIndex(push)];
+        int boxTo = getDestination(box, push);
+        board.moveBox(box, boxTo);
+        board.setPlayer(BoardCustom.neighbours[boxTo * 4 + ((int) (push & 3) ^ 2)]);
+    }
+
+    /**
+     * Reverses {@link #perform(BoardCustom, long)}; works wherever the player was moved to afterwards.
+     * @param board
+     * @param push
+     * @param boxFrom packed box position before the push
+     * @param playerBefore packed player position before the push
+     */
+    public static void reverse(BoardCustom board, long push, int boxFrom, int playerBefore) {
+        board.moveBox(getDestination(boxFrom, push), boxFrom);
+        board.setPlayer(playerBefore);
+    }
+
+    public static String toString(long push) {
+        return "TCompactPush[box " + getBoxIndex(push) + ", " + getDirection(push) + ", walk " + getWalkCost(push)
+             + (getRun(push) > 0 ? ", run " + getRun(push) : "") + (getMacro(push) >= 0 ? ", macro " + getMacro(push) : "") + "]";
+    }
+}
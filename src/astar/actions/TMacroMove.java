@@ -0,0 +1,95 @@
+package astar.actions;
+
+import astar.BoardCustom;
+import game.actions.EDirection;
+import game.actions.oop.EActionType;
+
+/**
+ * A walk to the tile behind a box followed by a fixed sequence of player steps, some of them pushes;
+ * the regular-action form of a macro move (see {@link astar.MacroMoves}).
+ */
+public class TMacroMove extends TAction {
+
+    private final TWalk walk;
+    private final EDirection[] moves;
+    private final boolean[] isPush; // per move
+
+    public TMacroMove(TWalk walk, EDirection[] moves, boolean[] isPush) {
+        this.walk = walk;
+        this.moves = moves;
+        this.isPush = isPush;
+    }
+
+    public TWalk getWalk() {
+        return walk;
+    }
+
+    // The same moves after another walk, e.g. one planned from the real player position
+    public TMacroMove withWalk(TWalk walk) {
+        return new TMacroMove(walk, moves, isPush);
+    }
+
+    public int getPushes() {
+        int count = 0;
+        for (boolean push : isPush) if (push) count++;
+        return count;
+    }
+
+    @Override
+    public EActionType getType() {
+        return EActionType.WALK_AND_PUSH;
+    }
+
+    @Override
+    public EDirection getDirection() {
+        EDirection first = walk.getDirection();
+        return first != null ? first : moves[0];
+    }
+
+    @Override
+    public EDirection[] getDirections() {
+        EDirection[] walkDirs = walk.getDirections();
+        EDirection[] result = new EDirection[walkDirs.length + moves.length];
+        System.arraycopy(walkDirs, 0, result, 0, walkDirs.length);
+        System.arraycopy(moves, 0, result, walkDirs.length, moves.length);
+        return result;
+    }
+
+    @Override
+    public int getSteps() {
+        return walk.getSteps() + moves.length;
+    }
+
+    @Override
+    public boolean isPossible(BoardCustom board) {
+        // Pre-condition when creating this macro action
+        return true;
+    }
+
+    @Override
+    public void perform(BoardCustom board) {
+        walk.perform(board);
+        for (int i = 0; i < moves.length; i++) {
+            EDirection d = moves[i];
+            int x = board.getPlayerX(), y = board.getPlayerY();
+            if (isPush[i]) board.moveBox(x + d.dX, y + d.dY, x + d.dX + d.dX, y + d.dY + d.dY);
+            board.movePlayer(x, y, x + d.dX, y + d.dY);
+        }
+    }
+
+    @Override
+    public void reverse(BoardCustom board) {
+        for (int i = moves.length - 1; i >= 0; i--) {
+            EDirection d = moves[i];
+            int x = board.getPlayerX(), y = board.getPlayerY();
+            board.movePlayer(x, y, x - d.dX, y - d.dY);
+            if (isPush[i]) board.moveBox(x + d.dX, y + d.dY, x, y);
+        }
+        walk.reverse(board);
+    }
+
+    @Override
+    public String toString() {
+        return "TMacroMove[" + moves.length + " moves]";
+    }
+}
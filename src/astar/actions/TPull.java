@@ -0,0 +1,96 @@
+package astar.actions;
+
+import astar.BoardCustom;
+import game.actions.EDirection;
+import game.actions.oop.EActionType;
+
+/**
+ * Pull of a box, the move of the reverse (pull) search {@link astar.PullProblem}: the player walks to the tile
+ * next to the box in 'dir' and steps on in 'dir', the box following it. Undoing a pull is a push the other way.
+ */
+public class TPull extends TAction {
+
+    private final int box; // packed position of the box before the pull
+    private final EDirection dir;
+    private final EDirection[] dirs;
+
+    private int playerBefore = -1;
+
+    public TPull(int box, EDirection dir) {
+        this.box = box;
+        this.dir = dir;
+        this.dirs = new EDirection[] { dir };
+    }
+
+    public int getBox() {
+        return box;
+    }
+
+    // Where the box ends up
+    public int getBoxTo() {
+        return BoardCustom.neighbour(box, dir);
+    }
+
+    // Where the player ends up
+    public int getPlayerTo() {
+        return BoardCustom.neighbour(getBoxTo(), dir);
+    }
+
+    @Override
+    public EActionType getType() {
+        return EActionType.MOVE;
+    }
+
+    @Override
+    public EDirection getDirection() {
+        return dir;
+    }
+
+    /**
+     * The player's last step; the walk to the box is not part of the action.
+     */
+    @Override
+    public EDirection[] getDirections() {
+        return dirs;
+    }
+
+    @Override
+    public int getSteps() {
+        return 1;
+    }
+
+    @Override
+    public boolean isPossible(BoardCustom board) {
+        int to = BoardCustom.neighbour(box, dir);
+        if (!board.isBox(box) || to == -1 || !board.isWalkable(to)) return false;
+        int beyond = BoardCustom.neighbour(to, dir);
+        if (beyond == -1 || !board.isWalkable(beyond)) return false;
+        return board.getWalkTo(BoardCustom.getX(to), BoardCustom.getY(to)) != null;
+    }
+
+    /**
+     * PERFORM THE PULL, no validation, call {@link #isPossible(BoardCustom)} first!
+     * @param board
+     */
+    @Override
+    public void perform(BoardCustom board) {
+        playerBefore = board.positions[0];
+        board.moveBox(box, getBoxTo());
+        board.setPlayer(getPlayerTo());
+    }
+
+    /**
+     * REVERSE THE ACTION PREVIOUSLY DONE BY {@link #perform(BoardCustom)}, no validation.
+     * @param board
+     */
+    @Override
+    public void reverse(BoardCustom board) {
+        board.moveBox(getBoxTo(), box);
+        board.setPlayer(playerBefore);
+    }
+
+    @Override
+    public String toString() {
+        return "TPull[" + BoardCustom.getX(box) + "," + BoardCustom.getY(box) + " " + dir + "]";
+    }
+}
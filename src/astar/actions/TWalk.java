@@ -33,7 +33,7 @@ public class TWalk extends TAction {
 
 	@Override
 	public EDirection getDirection() {
-		return path == null ? null : path[0];
+		return path == null || path.length == 0 ? null : path[0];
 	}
 	
 	@Override
@@ -15,6 +15,14 @@ public class TWalkPushSequence extends TAction {
         this.push = push;
     }
 
+    public TWalk getWalk() {
+        return walk;
+    }
+
+    public TPush getPush() {
+        return push;
+    }
+
     public EActionType getType() {
         return EActionType.WALK_AND_PUSH;
     }
@@ -0,0 +1,71 @@
+package astar.detectors;
+
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.util.BipartiteMatcher;
+
+// Bipartite deadlocks.
+// Every target needs its own box, and a box can only go to the targets it can be pushed to on an empty
+// board (DeadSquareDetector.targetMasks). If after a push the boxes can't be matched to all targets,
+// the position is dead. The matching of a board is built once; each push is then checked by one
+// augmenting path from the pushed box, or in O(1) if the box can still reach its matched target.
+// One detector per thread.
+
+public class BipartiteDeadlockDetector implements DeadlockDetector {
+
+    private static final ThreadLocal<BipartiteDeadlockDetector> detectors = ThreadLocal.withInitial(BipartiteDeadlockDetector::new);
+
+    public static BipartiteDeadlockDetector get() {
+        return detectors.get();
+    }
+
+    private long[] masks; // the level the matcher was set up for
+    private BipartiteMatcher matcher;
+
+    // the board the matching belongs to
+    private BoardCustom board;
+    private int[] positions = new int[0];
+    private boolean perfect;
+
+    /**
+     * Whether after pushing the box at 'boxFrom' to 'boxTo' some target can't get a box of its own.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    @Override
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        if (DeadSquareDetector.targetMasks == null || BoardCustom.boxCount != BoardCustom.targets.size()) return false;
+        prepare(board);
+        if (!perfect) return true;
+
+        int[] positions = board.positions;
+        int row = 0;
+        while (positions[row + 1] != boxFrom) row++;
+        return !matcher.canReassign(row, masks, boxTo * DeadSquareDetector.targetWords);
+    }
+
+    @Override
+    public int cost() {
+        return 40;
+    }
+
+    // Matches the boxes of 'board' unless its matching is already there
+    private void prepare(BoardCustom board) {
+        if (masks != DeadSquareDetector.targetMasks || matcher == null || positions.length != board.positions.length) {
+            masks = DeadSquareDetector.targetMasks;
+            matcher = new BipartiteMatcher(BoardCustom.boxCount, BoardCustom.targets.size());
+            positions = new int[board.positions.length];
+            this.board = null;
+        }
+        if (board == this.board && Arrays.equals(positions, board.positions)) return;
+
+        this.board = board;
+        System.arraycopy(board.positions, 0, positions, 0, positions.length);
+        int words = DeadSquareDetector.targetWords;
+        for (int i = 1; i < positions.length; i++) matcher.setRow(i - 1, masks, positions[i] * words);
+        perfect = matcher.match() == BoardCustom.boxCount;
+    }
+}
@@ -0,0 +1,76 @@
+package astar.detectors;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+
+// Closed diagonal deadlocks.
+//      #
+//     # $      The empty square in the middle is closed in by walls and boxes, so the player can't get
+//      $#      in there to push the boxes out. Walls beside each box keep it from moving sideways, and
+//              pushing it into the middle square puts it on a dead square. Neither box can ever move
+// again, so if one of them is off target the position is dead. Freeze checks miss this: seen from the
+// player's side, each box could be pushed away from the middle.
+
+public class ClosedDiagonalDeadlockDetector implements DeadlockDetector {
+
+    private final boolean[] isSimpleDeadlock;
+
+    public ClosedDiagonalDeadlockDetector(boolean[] isSimpleDeadlock) {
+        this.isSimpleDeadlock = isSimpleDeadlock;
+    }
+
+    /**
+     * Whether the box pushed from 'boxFrom' to 'boxTo' closes in an empty dead square next to it, all boxes around
+     * that square being stuck and one of them off target.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    @Override
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        int[] neighbours = BoardCustom.neighbours;
+        for (int dir = 0; dir < 4; dir++) {
+            int pocket = neighbours[boxTo * 4 + dir];
+            // boxFrom is where the player stands after the push
+            if (pocket == -1 || pocket == boxFrom || !isSimpleDeadlock[pocket] || isBlocked(board, pocket, boxFrom, boxTo)) continue;
+            if (isClosed(board, pocket, boxFrom, boxTo)) return true;
+        }
+        return false;
+    }
+
+    // Every side of 'pocket' is a wall or a box that can't move sideways, and some of those boxes is off target
+    private boolean isClosed(BoardCustom board, int pocket, int boxFrom, int boxTo) {
+        int[] neighbours = BoardCustom.neighbours;
+        boolean offTarget = false;
+        for (int dir = 0; dir < 4; dir++) {
+            int side = neighbours[pocket * 4 + dir];
+            if (side == -1 || TTile.isWall(BoardCustom.tiles[side])) continue;
+            if (!isBox(board, side, boxFrom, boxTo)) return false;
+
+            int left = neighbours[side * 4 + ((dir + 3) & 3)];
+            int right = neighbours[side * 4 + ((dir + 1) & 3)];
+            if (!isWall(left) && !isWall(right)) return false;
+            if (!BoardCustom.isTarget(side)) offTarget = true;
+        }
+        return offTarget;
+    }
+
+    private static boolean isWall(int position) {
+        return position == -1 || TTile.isWall(BoardCustom.tiles[position]);
+    }
+
+    // Box flag on the board after the push
+    private static boolean isBox(BoardCustom board, int position, int boxFrom, int boxTo) {
+        return position == boxTo || position != boxFrom && board.isBox(position);
+    }
+
+    private static boolean isBlocked(BoardCustom board, int position, int boxFrom, int boxTo) {
+        return isWall(position) || isBox(board, position, boxFrom, boxTo);
+    }
+
+    @Override
+    public int cost() {
+        return 10;
+    }
+}
@@ -0,0 +1,159 @@
+package astar.detectors;
+
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+
+// Frozen corral deadlocks.
+// After a push, the pushed box belongs to a corral: the tiles the player can't reach around it, flooded
+// over non-wall tiles, boxes included. Nothing outside a corral can push a box into it (such a box would
+// touch the corral and be part of it), and the player's area next to it only shrinks, so the corral only
+// changes by pushes of its own boxes from the player's area. If there is no such push (pushes onto dead
+// squares don't count) and the corral still needs work, the position is dead. A full corral search
+// would find more; this is the part that needs no search. One detector per thread.
+
+public class CorralDeadlockDetector implements DeadlockDetector {
+
+    private static final ThreadLocal<CorralDeadlockDetector> detectors = ThreadLocal.withInitial(CorralDeadlockDetector::new);
+
+    public static CorralDeadlockDetector get() {
+        return detectors.get();
+    }
+
+    private int cells = -1;
+
+    // player's area where reach[i] == epoch, corral where corral[i] == epoch
+    private int epoch;
+    private int[] reach;
+    private int[] corral;
+    private int[] queue;
+    private int[] boxes;
+
+    private boolean[][] source; // dead squares the flat copy was made from
+    private boolean[] isSimpleDeadlock;
+
+    // the push being checked
+    private BoardCustom board;
+    private int boxFrom, boxTo;
+
+    private void ensureCapacity() {
+        int size = BoardCustom.width * BoardCustom.height;
+        if (size != cells) {
+            cells = size;
+            reach = new int[size];
+            corral = new int[size];
+            queue = new int[size];
+            boxes = new int[size];
+            epoch = 0;
+        }
+        if (source != DeadSquareDetector.isSimpleDeadlock) {
+            source = DeadSquareDetector.isSimpleDeadlock;
+            isSimpleDeadlock = DeadSquareDetector.toPositions(source);
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reach, 0);
+            Arrays.fill(corral, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Whether the corral of the box pushed from 'boxFrom' to 'boxTo' needs work but none of its boxes can be pushed.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    @Override
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        ensureCapacity();
+
+        // the usual case: the box can be pushed on
+        int ahead = BoardCustom.neighbours[boxTo * 4 + direction(boxFrom, boxTo)];
+        if (ahead != -1 && !TTile.isWall(BoardCustom.tiles[ahead]) && !board.isBox(ahead) && !isSimpleDeadlock[ahead]) return false;
+
+        this.board = board;
+        this.boxFrom = boxFrom;
+        this.boxTo = boxTo;
+        try {
+            floodPlayer();
+            int count = floodCorral();
+            if (count < 0) return false; // nothing left to do in there
+
+            int[] neighbours = BoardCustom.neighbours;
+            for (int i = 0; i < count; i++) {
+                int box = boxes[i];
+                for (int dir = 0; dir < 4; dir++) {
+                    int target = neighbours[box * 4 + dir];
+                    int side = neighbours[box * 4 + (dir ^ 2)];
+                    if (target == -1 || side == -1 || reach[side] != epoch) continue;
+                    if (TTile.isWall(BoardCustom.tiles[target]) || isBox(target) || isSimpleDeadlock[target]) continue;
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            this.board = null;
+        }
+    }
+
+    // Direction from 'from' to its neighbour 'to'
+    private static int direction(int from, int to) {
+        int[] neighbours = BoardCustom.neighbours;
+        for (int dir = 0; dir < 4; dir++) {
+            if (neighbours[from * 4 + dir] == to) return dir;
+        }
+        throw new IllegalArgumentException("Not neighbours: " + from + ", " + to);
+    }
+
+    // Box flag on the board after the push
+    private boolean isBox(int position) {
+        return position == boxTo || position != boxFrom && board.isBox(position);
+    }
+
+    // The player's area after the push, the player standing at boxFrom
+    private void floodPlayer() {
+        int[] neighbours = BoardCustom.neighbours;
+        int head = 0, tail = 0;
+        reach[boxFrom] = epoch;
+        queue[tail++] = boxFrom;
+        while (head < tail) {
+            int curr = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int next = neighbours[curr * 4 + d];
+                if (next == -1 || reach[next] == epoch || TTile.isWall(BoardCustom.tiles[next]) || isBox(next)) continue;
+                reach[next] = epoch;
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    // Collects the boxes of the corral around boxTo; returns their count, -1 if the corral needs no work
+    private int floodCorral() {
+        int[] neighbours = BoardCustom.neighbours;
+        boolean needsWork = false;
+        int count = 0;
+        int head = 0, tail = 0;
+        corral[boxTo] = epoch;
+        queue[tail++] = boxTo;
+        while (head < tail) {
+            int curr = queue[head++];
+            boolean box = isBox(curr);
+            if (box) boxes[count++] = curr;
+            if (BoardCustom.isTarget(curr) != box) needsWork = true;
+            for (int d = 0; d < 4; d++) {
+                int next = neighbours[curr * 4 + d];
+                if (next == -1 || corral[next] == epoch || reach[next] == epoch || TTile.isWall(BoardCustom.tiles[next])) continue;
+                corral[next] = epoch;
+                queue[tail++] = next;
+            }
+        }
+        return needsWork ? count : -1;
+    }
+
+    @Override
+    public int cost() {
+        return 1000;
+    }
+}
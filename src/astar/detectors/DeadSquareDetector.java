@@ -1,39 +1,28 @@
 package astar.detectors;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Queue;
+import java.util.Arrays;
 
 import astar.BoardCustom;
-import astar.actions.TTile;
-import astar.util.BipartiteMatcher;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 import game.board.compact.CTile;
 
 public class DeadSquareDetector {
-    public static boolean[][] isSimpleDeadlock;
-    // Mask for each target to compute bipartite deadlocks
-    private static boolean[][][] isSimpleDeadlockByTarget;
-    private static List<Integer> targetX;
-    private static List<Integer> targetY;
-
-    private static HashMap<Integer, Boolean> visitedFreezeDeadlocks;
-    public static int frozenDeadlockCount;
-    public static int frozenDeadlockCallsCount;
-    public static long frozenDeadlockSearchTime;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
 
-    public static int bipartiteDeadlockCount;
-    public static int bipartiteDeadlockCallsCount;
-    public static long bipartiteDeadlockSearchTime;
+    public static boolean[][] isSimpleDeadlock;
+    // Targets a box can be pushed to, a bitset of targetWords longs per position (y * width + x), for bipartite deadlocks
+    public static long[] targetMasks;
+    public static int targetWords;
+    // Pulls needed to get a box from a target to a position on an empty board, ignoring where the player can walk:
+    // pullDistances[target][position], targets numbered column by column as in BoardCustom.targets; UNREACHABLE if impossible
+    public static int[][] pullDistances;
+    private static int targetCount;
 
     // 1. Delete all boxes from the board
-    // 2. Place a box at the goal square
-    // 3. PULL the box from the goal square to every possible square and mark all reached squares as visited 
-    
+    // 2. Place a box at every goal square
+    // 3. PULL the boxes from the goal squares to every possible square, all goals at once: a square reached from no goal is dead
+
     public static boolean[][] detect(BoardCompact board) {
 //        if (isSimpleDeadlock == null) {
           precomputeSimpleDeadlocks(board);
@@ -56,260 +45,136 @@ public class DeadSquareDetector {
         return isSimpleDeadlock;
     }
 
-    private static void precomputeSimpleDeadlocks(BoardCompact board) {
-        // For analysis
-        // frozenDeadlockCount = 0;
-        // frozenDeadlockCallsCount = 0;
-        // frozenDeadlockSearchTime = 0;
-
-        // bipartiteDeadlockCount = 0;
-        // bipartiteDeadlockCallsCount = 0;
-        // bipartiteDeadlockSearchTime = 0;
-
-        // Get targets
-        isSimpleDeadlock = new boolean[board.width()][board.height()];
-        targetX = new ArrayList<>();
-        targetY = new ArrayList<>();
-        boolean[][] isWall = new boolean[board.width()][board.height()];
-
-        for (int x = 0; x < board.width(); ++x) {
-			for (int y = 0; y < board.height(); ++y) {
-                // Initialize the deadlock 2D array to true
-                isSimpleDeadlock[x][y] = true;
+    // Same map indexed by BoardCustom position (y * width + x)
+    public static boolean[] toPositions(boolean[][] isSimpleDeadlock) {
+        boolean[] result = new boolean[BoardCustom.width * BoardCustom.height];
+        for (int x = 0; x < BoardCustom.width; x++) {
+            for (int y = 0; y < BoardCustom.height; y++) {
+                result[BoardCustom.getPacked(x, y)] = isSimpleDeadlock[x][y];
+            }
+        }
+        return result;
+    }
 
+    // One breadth-first pass pulling from all targets together. Each square carries the set of targets
+    // that reached it in the current layer, so a square is expanded once per layer for all of them.
+    private static void precomputeSimpleDeadlocks(BoardCompact board) {
+        int width = board.width(), height = board.height(), size = width * height;
+        boolean[] isWall = new boolean[size];
+        int[] targets = new int[size];
+        int count = 0;
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
                 int tile = board.tiles[x][y];
-                if (CTile.forSomeBox(tile)) {
-                    targetX.add(x);
-                    targetY.add(y);
-                }
-                isWall[x][y] = CTile.isWall(tile);
-			}			
-		}
-
-        isSimpleDeadlockByTarget = new boolean[board.width()][board.height()][targetX.size()];
-        for (int x = 0; x < board.width(); ++x) {
-			for (int y = 0; y < board.height(); ++y) {
-                for (int i = 0; i < targetX.size(); i++) {
-                    isSimpleDeadlockByTarget[x][y][i] = true;
-                }
+                if (CTile.forSomeBox(tile)) targets[count++] = x + y * width;
+                isWall[x + y * width] = CTile.isWall(tile);
             }
         }
 
-        // For each target, mark reachable tiles as not deadlocks
-        for (int i = 0; i < targetX.size(); i++) {
-            Queue<Integer> remainingX = new ArrayDeque<>();
-            Queue<Integer> remainingY = new ArrayDeque<>();
-            HashSet<Integer> visited = new HashSet<>();
-
-            remainingX.add(targetX.get(i));
-            remainingY.add(targetY.get(i));
-            visited.add(targetX.get(i) + targetY.get(i) * board.width());
-
-            int x, y;
-            while (!remainingX.isEmpty()) {
-                x = remainingX.poll();
-                y = remainingY.poll();
-                isSimpleDeadlock[x][y] = false;
-                isSimpleDeadlockByTarget[x][y][i] = false;
-
-                // Process possible pulls
-                for (EDirection dir : EDirection.arrows()) {
-                    if (!isPullPossible(x, y, dir, isWall)  || visited.contains((x+dir.dX) + (y+dir.dY) * board.width())
-                    ) continue;
+        int words = (count + 63) >>> 6;
+        long[] reached = new long[size * words];
+        long[] frontier = new long[size * words];
+        long[] next = new long[size * words];
+        int[] layer = new int[size], nextLayer = new int[size];
+        int[] stamp = new int[size];
+        int[][] distances = new int[count][size];
+
+        int layerSize = 0;
+        for (int t = 0; t < count; t++) {
+            Arrays.fill(distances[t], UNREACHABLE);
+            int position = targets[t];
+            reached[position * words + (t >>> 6)] |= 1L << t;
+            frontier[position * words + (t >>> 6)] |= 1L << t;
+            layer[layerSize++] = position;
+        }
 
-                    int neighbourX = x + dir.dX;
-                    int neighbourY = y + dir.dY;
+        // pull offsets per direction, UP RIGHT DOWN LEFT
+        int[] dx = { 0, 1, 0, -1 }, dy = { -1, 0, 1, 0 };
+        for (int distance = 0; layerSize > 0; distance++) {
+            int nextSize = 0;
+            for (int i = 0; i < layerSize; i++) {
+                int position = layer[i];
+                int x = position % width, y = position / width;
+                for (int w = 0; w < words; w++) {
+                    for (long bits = frontier[position * words + w]; bits != 0; bits &= bits - 1) {
+                        distances[(w << 6) + Long.numberOfTrailingZeros(bits)][position] = distance;
+                    }
+                }
 
-                    remainingX.add(neighbourX);
-                    remainingY.add(neighbourY);
+                // the box moves onto the player's square, the player steps back
+                for (int dir = 0; dir < 4; dir++) {
+                    int playerX = x + dx[dir], playerY = y + dy[dir];
+                    int backX = playerX + dx[dir], backY = playerY + dy[dir];
+                    if (backX < 0 || backY < 0 || backX >= width || backY >= height) continue;
+                    int player = playerX + playerY * width;
+                    if (isWall[player] || isWall[backX + backY * width]) continue;
+
+                    boolean added = false;
+                    for (int w = 0; w < words; w++) {
+                        long bits = frontier[position * words + w] & ~reached[player * words + w];
+                        if (bits == 0) continue;
+                        reached[player * words + w] |= bits;
+                        next[player * words + w] |= bits;
+                        added = true;
+                    }
+                    if (added && stamp[player] != distance + 1) {
+                        stamp[player] = distance + 1;
+                        nextLayer[nextSize++] = player;
+                    }
                 }
+            }
+
+            for (int i = 0; i < layerSize; i++) Arrays.fill(frontier, layer[i] * words, (layer[i] + 1) * words, 0);
+            long[] swapBits = frontier; frontier = next; next = swapBits;
+            int[] swapLayer = layer; layer = nextLayer; nextLayer = swapLayer;
+            layerSize = nextSize;
+        }
 
-                visited.add(x + y * board.width());
+        boolean[][] dead = new boolean[width][height];
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                int position = x + y * width;
+                boolean any = false;
+                for (int w = 0; w < words && !any; w++) any = reached[position * words + w] != 0;
+                dead[x][y] = !any;
             }
         }
-    }
 
-    private static boolean isPullPossible(int x, int y, EDirection dir, boolean[][] isWall) {
-        return !isWall[x+dir.dX][y+dir.dY] && !isWall[x+dir.dX+dir.dX][y+dir.dY+dir.dY];
+        targetCount = count;
+        targetWords = words;
+        targetMasks = reached;
+        pullDistances = distances;
+        isSimpleDeadlock = dead;
     }
 
     // Checks only whether a target becomes unreachable for all boxes
     public static boolean isBipartiteDeadlockSimple(EDirection pushDirection, int x, int y, BoardCustom b) {
-        // Check if there exists a target that no box can reach
-        // Box position before push
-        int startX = x + pushDirection.dX;
-        int startY = y + pushDirection.dY;
-
-        // After push, the target position is where the box will be
-        int endX = x + pushDirection.dX + pushDirection.dX;
-        int endY = y + pushDirection.dY + pushDirection.dY;
-
-        // First get all targets that can be reached by the current box before push, but won't be reachable after push
-        List<Integer> reachableTargetIndices = new ArrayList<>();
-        for (int t = 0; t < targetX.size(); t++) {
-            if (isSimpleDeadlockByTarget[startX][startY][t]) continue;
-            reachableTargetIndices.add(t);
-        }
-
-        // For these targets, check if there's still some other box that can reach them
-        for (Integer reachableTarget : reachableTargetIndices) {
-            // Check new place of the moved box
-            if (!isSimpleDeadlockByTarget[endX][endY][reachableTarget]) continue;
-            boolean isUnreachable = true;
-            for (Integer boxPosition : b.getBoxes()) {
-                int bx = BoardCustom.getX(boxPosition);
-                int by = BoardCustom.getY(boxPosition);
-                // The moved box won't be at its current place anymore
-                if (bx == startX && by == startY) continue;
-                // At least one box can reach this target
-                if (!isSimpleDeadlockByTarget[bx][by][reachableTarget]) {
-                    isUnreachable = false;
-                    break;
-                }
+        int boxFrom = BoardCustom.getPacked(x + pushDirection.dX, y + pushDirection.dY);
+        int boxTo = BoardCustom.getPacked(x + pushDirection.dX + pushDirection.dX, y + pushDirection.dY + pushDirection.dY);
+        int words = targetWords;
+        for (int w = 0; w < words; w++) {
+            long reachable = targetMasks[boxTo * words + w];
+            for (int i = 1; i < b.positions.length; i++) {
+                if (b.positions[i] != boxFrom) reachable |= targetMasks[b.positions[i] * words + w];
             }
-            if (isUnreachable) return true;
+            int inWord = Math.min(64, targetCount - (w << 6));
+            long all = inWord == 64 ? -1L : (1L << inWord) - 1;
+            if (reachable != all) return true;
         }
-
         return false;
     }
 
     // Checks not only that every target has a box that can reach it, but also that there are enough boxes to distribute to the targets
     public static boolean isBipartiteDeadlock(EDirection pushDirection, int x, int y, BoardCustom b) {
-        // bipartiteDeadlockCallsCount++;
-        // long searchStartMillis = System.currentTimeMillis();
-
-        // Check if there exists a target that no box can reach
-        // Box position before push
-        int startX = x + pushDirection.dX;
-        int startY = y + pushDirection.dY;
-
-        // After push, the target position is where the box will be
-        int endX = x + pushDirection.dX + pushDirection.dX;
-        int endY = y + pushDirection.dY + pushDirection.dY;
-
-        // For these targets, check if there's still some other box that can reach them
-        List<List<Integer>> reachableBoxesByTarget = new ArrayList<>();
-        for (int target = 0; target < targetX.size(); target++) {
-            List<Integer> reachableBoxes = new ArrayList<>();
-            // Check new place of the moved box
-            if (!isSimpleDeadlockByTarget[endX][endY][target]) {
-                reachableBoxes.add(b.getPacked(endX, endY));
-            }
-            boolean isUnreachable = true;
-            for (Integer boxPosition : b.getBoxes()) {
-                int bx = BoardCustom.getX(boxPosition);
-                int by = BoardCustom.getY(boxPosition);
-                // The moved box won't be at its current place anymore
-                if (bx == startX && by == startY) continue;
-                // At least one box can reach this target
-                if (!isSimpleDeadlockByTarget[bx][by][target]) {
-                    isUnreachable = false;
-                    reachableBoxes.add(boxPosition);
-                }
-            }
-            reachableBoxesByTarget.add(reachableBoxes);
-            // if (isUnreachable) bipartiteDeadlockCount++;
-            // bipartiteDeadlockSearchTime += System.currentTimeMillis() - searchStartMillis;
-            if (isUnreachable) return true;
-        }
-
-        // ??? Use Ford-Fulkerson max flow algorithm to decide whether there is a matching
-        // Targets are connected to source
-        // Edges indicate that a target can be reached by a box
-        // Boxes are connected to sink
-        // Flow at the sink must be same as number of targets
-        BipartiteMatcher bpmatcher = new BipartiteMatcher(targetX.size(), b.getBoxes(), reachableBoxesByTarget);
-        int matchingSize = bpmatcher.hopcroftKarp();
-
-        // if (matchingSize != targetX.size()) {
-        //     System.out.println(x + ", " + y + ", " + pushDirection.toString());
-        //     b.debugPrint();
-        // }
-        // if (matchingSize != targetX.size()) bipartiteDeadlockCount++;
-        // bipartiteDeadlockSearchTime += System.currentTimeMillis() - searchStartMillis;
-        return matchingSize != targetX.size();
+        int boxFrom = BoardCustom.getPacked(x + pushDirection.dX, y + pushDirection.dY);
+        int boxTo = BoardCustom.getPacked(x + pushDirection.dX + pushDirection.dX, y + pushDirection.dY + pushDirection.dY);
+        return BipartiteDeadlockDetector.get().isDeadlock(b, boxFrom, boxTo);
     }
 
+    // Pushing the box next to the player at x, y in 'pushDirection' freezes a box off target, see FreezeDeadlockDetector
     public static boolean isFreezeDeadlock(EDirection pushDirection, int x, int y, BoardCustom b) {
-        // frozenDeadlockCallsCount++;
-        // long searchStartMillis = System.currentTimeMillis();
-
-        visitedFreezeDeadlocks = new HashMap<>();
-        // For both axes check:
-        // 1. If there is a wall on the left or on the right side of the box then the box is blocked along this axis
-        // 2. If there is a simple deadlock square on both sides (left and right) of the box the box is blocked along this axis
-        // 3. If there is a box one the left or right side then this box is blocked if the other box is blocked. 
-
-        // Box position before push
-        int startX = x + pushDirection.dX;
-        int startY = y + pushDirection.dY;
-
-        // After push, the target position is where the box will be
-        int endX = x + pushDirection.dX + pushDirection.dX;
-        int endY = y + pushDirection.dY + pushDirection.dY;
-
-        // If the position would be pushed to on a target tile, return true only if some neighbours not on target tiles become frozen
-        byte tile = b.tile(endX, endY);
-        if (TTile.forBox(tile)) {
-            boolean frozenNonTargetNeighbour = false;
-            byte tileRight = b.tile(endX+1, endY);
-            byte tileLeft = b.tile(endX-1, endY);
-            byte tileUp = b.tile(endX, endY-1);
-            byte tileDown = b.tile(endX, endY+1);
-
-            frozenNonTargetNeighbour |= !TTile.forBox(tileRight) && TTile.isBox(tileRight) && isFreezeDeadlock(startX, startY, endX, endY, endX+1, endY, b); 
-            frozenNonTargetNeighbour |= !TTile.forBox(tileLeft) && TTile.isBox(tileLeft) && isFreezeDeadlock(startX, startY, endX, endY, endX-1, endY, b); 
-            frozenNonTargetNeighbour |= !TTile.forBox(tileUp) && TTile.isBox(tileUp) && isFreezeDeadlock(startX, startY, endX, endY, endX, endY-1, b); 
-            frozenNonTargetNeighbour |= !TTile.forBox(tileDown) && TTile.isBox(tileDown) && isFreezeDeadlock(startX, startY, endX, endY, endX, endY+1, b); 
-
-            // if (frozenNonTargetNeighbour) frozenDeadlockCount++;
-            // frozenDeadlockSearchTime += System.currentTimeMillis() - searchStartMillis;
-            return frozenNonTargetNeighbour;
-        }
-
-        boolean result = isFreezeDeadlock(startX, startY, endX, endY, endX, endY, b);
-        // if (result) frozenDeadlockCount++;
-        // frozenDeadlockSearchTime += System.currentTimeMillis() - searchStartMillis;
-        return result;
-    }
-
-    // Look if box at x and y is freeze deadlocked while taking into account that box from source is supposed to be moved to target
-    private static boolean isFreezeDeadlock(int startX, int startY, int endX, int endY, int x, int y, BoardCustom b) {
-        if (x <= 0 || x >= BoardCustom.width || y <= 0 || y >= BoardCustom.height) return true;
-
-        int position = b.getPacked(x, y);
-        if (visitedFreezeDeadlocks.containsKey(position)) return visitedFreezeDeadlocks.get(position);
-        visitedFreezeDeadlocks.put(position, true);
-
-        // Horizontal freeze
-        boolean leftOutOfBound = x-1 < 0;
-        boolean rightOutOfBound = x+1 >= BoardCustom.width;
-
-        boolean horizontalWallBlock = leftOutOfBound || rightOutOfBound || TTile.isWall(b.tile(x-1, y)) || TTile.isWall(b.tile(x+1, y));
-
-        boolean horizontalSimpleDeadlockBlock = horizontalWallBlock
-                                              || (leftOutOfBound || isSimpleDeadlock[x-1][y]) && (rightOutOfBound || isSimpleDeadlock[x+1][y]);
-
-        boolean horizontalBoxBlock = horizontalSimpleDeadlockBlock 
-                                   || (leftOutOfBound || (!(x-1 == startX && y == startY) && TTile.isBox(b.tile(x-1, y)) && isFreezeDeadlock(startX, startY, endX, endY, x-1, y, b)))
-                                   || (rightOutOfBound || (!(x+1 == startX && y == startY) && TTile.isBox(b.tile(x+1, y)) && isFreezeDeadlock(startX, startY, endX, endY, x+1, y, b)));
-
-        if (!horizontalBoxBlock) return false;
-
-        // Vertical freeze
-        boolean upOutOfBound = y-1 < 0;
-        boolean downOutOfBound = y+1 >= BoardCustom.height;
-
-        boolean verticalWallBlock = upOutOfBound || downOutOfBound || TTile.isWall(b.tile(x, y+1)) || TTile.isWall(b.tile(x, y-1));
-        if (verticalWallBlock) return true;
-
-        boolean verticalSimpleDeadlockBlock = (upOutOfBound || isSimpleDeadlock[x][y-1]) && (downOutOfBound || isSimpleDeadlock[x][y+1]);
-        if (verticalSimpleDeadlockBlock) return true;
-
-        boolean verticalBoxBlock = (upOutOfBound || (!(x == startX && y-1 == startY) && TTile.isBox(b.tile(x, y-1)) && isFreezeDeadlock(startX, startY, endX, endY, x, y-1, b)))
-                                || (downOutOfBound || (!(x == startX && y+1 == startY) && TTile.isBox(b.tile(x, y+1)) && isFreezeDeadlock(startX, startY, endX, endY, x, y+1, b)));
-        if (verticalBoxBlock) return true;
-
-        return false;
+        int boxFrom = BoardCustom.getPacked(x + pushDirection.dX, y + pushDirection.dY);
+        int boxTo = BoardCustom.getPacked(x + pushDirection.dX + pushDirection.dX, y + pushDirection.dY + pushDirection.dY);
+        return FreezeDeadlockDetector.get().isDeadlock(b, boxFrom, boxTo);
     }
 }
@@ -0,0 +1,25 @@
+package astar.detectors;
+
+import astar.BoardCustom;
+
+// A pruning stage: decides whether a push leads into a deadlock. Stages are run by DeadlockPipeline,
+// cheapest first, and must only report positions that really are dead.
+
+public interface DeadlockDetector {
+
+    /**
+     * Whether pushing the box at 'boxFrom' to 'boxTo' leads into a deadlock.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo);
+
+    // Rough cost of a call in nanoseconds, orders the stages
+    int cost();
+
+    default String name() {
+        return getClass().getSimpleName();
+    }
+}
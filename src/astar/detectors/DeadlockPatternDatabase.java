@@ -0,0 +1,337 @@
+package astar.detectors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+
+// Deadlock patterns of 3x3 windows.
+// A window is a 3x3 area of floor, walls and boxes; everything around it is assumed to be free floor.
+// It is dead if its boxes can never all be pushed out of it, whatever the player's position. Extra walls
+// and boxes outside only make that harder, so on a real board a dead window without targets inside
+// means a deadlock: each of its boxes has to leave it to reach a target.
+//
+// The table is generated by retrograde search: starting from the empty window, boxes are pulled in from
+// outside and around inside; every (boxes, player region) reached this way can be cleared, the rest is dead.
+// It is generated offline (main) into a binary resource, one bit per window, and regenerated in memory if
+// the resource is missing.
+//
+// A window's key is its cells as base-3 digits (0 floor, 1 wall, 2 box), column by column. The walls'
+// part of the key is precomputed per window of the level, boxes add a table lookup per window row.
+
+public class DeadlockPatternDatabase implements DeadlockDetector {
+
+    public static final String RESOURCE = "astar/detectors/resources/deadlock-patterns.bin";
+
+    private static final int MAGIC = 0x534b4450; // "SKDP"
+    private static final int SIZE = 3;
+    private static final int CELLS = SIZE * SIZE;
+    private static final int KEYS = 19683;       // 3^9
+
+    private static final int FLOOR = 0, WALL = 1, BOX = 2;
+
+    private static DeadlockPatternDatabase instance;
+
+    private final long[] dead;
+
+    private DeadlockPatternDatabase(long[] dead) {
+        this.dead = dead;
+    }
+
+    // The shared table; read-only, safe to query from any thread
+    public static synchronized DeadlockPatternDatabase get() {
+        if (instance == null) {
+            InputStream in = DeadlockPatternDatabase.class.getClassLoader().getResourceAsStream(RESOURCE);
+            if (in != null) {
+                try (InputStream stream = in) {
+                    instance = read(stream);
+                } catch (IOException e) {
+                    instance = null;
+                }
+            }
+            if (instance == null) instance = generate();
+        }
+        return instance;
+    }
+
+    public boolean isDead(int key) {
+        return (dead[key >>> 6] & (1L << key)) != 0;
+    }
+
+    public int deadCount() {
+        int result = 0;
+        for (long word : dead) result += Long.bitCount(word);
+        return result;
+    }
+
+    /**
+     * Whether pushing the box at 'boxFrom' to 'boxTo' creates a dead window: checks the 9 windows containing 'boxTo'.
+     * Windows with a target are skipped.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    @Override
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        Level level = level();
+        int width = BoardCustom.width, height = BoardCustom.height;
+        int x = BoardCustom.getX(boxTo);
+        int y = BoardCustom.getY(boxTo);
+
+        // boxes of the 5x5 area around 'boxTo' after the push, a 5-bit mask per row (bit 0 = column x-2)
+        int[] rows = new int[5];
+        boolean inside = x >= 2 && y >= 2 && x < width - 2 && y < height - 2;
+        for (int row = 0; row < 5; row++) {
+            int cellY = y - 2 + row;
+            if (inside) {
+                rows[row] = board.getBoxBits(cellY * width + x - 2, 5);
+                continue;
+            }
+            if (cellY < 0 || cellY >= height) continue;
+            for (int column = 0; column < 5; column++) {
+                int cellX = x - 2 + column;
+                if (cellX >= 0 && cellX < width && board.isBox(cellY * width + cellX)) rows[row] |= 1 << column;
+            }
+        }
+        int fromX = BoardCustom.getX(boxFrom) - x + 2, fromY = BoardCustom.getY(boxFrom) - y + 2;
+        rows[fromY] &= ~(1 << fromX);
+        rows[2] |= 1 << 2;
+
+        // a box with nothing around it can always leave, so any window dead now was dead before the push
+        if (!level.wallAround[boxTo] && (rows[1] & 14) == 0 && (rows[2] & 10) == 0 && (rows[3] & 14) == 0) return false;
+
+        // window keys: the walls' part is precomputed per window center, boxes add their row by row
+        for (int dy = -1; dy <= 1; dy++) {
+            int centerY = y + dy;
+            if (centerY < 0 || centerY >= height) continue;
+            for (int dx = -1; dx <= 1; dx++) {
+                int centerX = x + dx;
+                if (centerX < 0 || centerX >= width) continue;
+                int key = level.wallKeys[centerY * width + centerX];
+                if (key == NO_WINDOW) continue;
+                int left = dx + 1, top = dy + 1;
+                for (int row = 0; row < SIZE; row++) key += ROW_KEYS[row][(rows[top + row] >> left) & 7];
+                if (isDead(key)) return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int cost() {
+        return 60;
+    }
+
+    // ROW_KEYS[row][mask]: key part of boxes in the window's 'row', bit i of 'mask' = column i
+    private static final int[][] ROW_KEYS = new int[SIZE][1 << SIZE];
+    static {
+        for (int row = 0; row < SIZE; row++) {
+            for (int mask = 0; mask < 1 << SIZE; mask++) {
+                for (int column = 0; column < SIZE; column++) {
+                    if ((mask & 1 << column) != 0) ROW_KEYS[row][mask] += BOX * pow3(column * SIZE + row);
+                }
+            }
+        }
+    }
+
+    private static int pow3(int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) result *= 3;
+        return result;
+    }
+
+    // Per-level part of the keys, rebuilt when the level changes
+    private static final int NO_WINDOW = -1;
+    private volatile Level level;
+
+    private Level level() {
+        Level result = level;
+        if (result == null || result.tiles != BoardCustom.tiles) level = result = new Level();
+        return result;
+    }
+
+    private static class Level {
+        final byte[] tiles = BoardCustom.tiles;
+        // key of the walls of the window centered at a position (tiles off the board are walls); NO_WINDOW with a target
+        final int[] wallKeys = new int[BoardCustom.width * BoardCustom.height];
+        // whether a wall (or the board's edge) touches the position, diagonals included
+        final boolean[] wallAround = new boolean[BoardCustom.width * BoardCustom.height];
+
+        Level() {
+            int width = BoardCustom.width, height = BoardCustom.height;
+            for (int center = 0; center < wallKeys.length; center++) {
+                int key = 0;
+                boolean target = false;
+                for (int cell = 0; cell < CELLS; cell++) {
+                    int cellX = center % width - 1 + cell / SIZE;
+                    int cellY = center / width - 1 + cell % SIZE;
+                    if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height || TTile.isWall(tiles[cellY * width + cellX])) {
+                        key += WALL * pow3(cell);
+                        wallAround[center] = true;
+                    } else {
+                        target |= BoardCustom.targetTiles[cellY * width + cellX];
+                    }
+                }
+                wallKeys[center] = target ? NO_WINDOW : key;
+            }
+        }
+    }
+
+    // --- generation ---
+
+    // cell i is at column i / 3, row i % 3; 'outside' stands for all the floor around the window
+    private static final int OUTSIDE = CELLS;
+
+    private static int neighbour(int cell, int dir) {
+        int column = cell / SIZE, row = cell % SIZE;
+        switch (dir) {
+            case 0: row--; break;    // up
+            case 1: column++; break; // right
+            case 2: row++; break;    // down
+            default: column--;       // left
+        }
+        if (column < 0 || row < 0 || column >= SIZE || row >= SIZE) return OUTSIDE;
+        return column * SIZE + row;
+    }
+
+    public static DeadlockPatternDatabase generate() {
+        long[] dead = new long[(KEYS + 63) / 64];
+        int[] queue = new int[(1 << CELLS) * (CELLS + 1)];
+        boolean[] alive = new boolean[(1 << CELLS) * (CELLS + 1)];
+
+        for (int walls = 0; walls < 1 << CELLS; walls++) {
+            Arrays.fill(alive, false);
+            int head = 0, tail = 0;
+
+            // empty window, the player anywhere
+            for (int player = 0; player <= CELLS; player++) {
+                if (player != OUTSIDE && (walls & 1 << player) != 0) continue;
+                int state = region(walls, 0, player);
+                if (!alive[state]) {
+                    alive[state] = true;
+                    queue[tail++] = state;
+                }
+            }
+
+            // pulls: the player steps from 'cell' to 'next', the box behind it (or a new one from outside) follows
+            while (head < tail) {
+                int state = queue[head++];
+                int boxes = state / (CELLS + 1);
+                int reachable = reachable(walls, boxes, state % (CELLS + 1));
+                for (int cell = 0; cell < CELLS; cell++) {
+                    if ((reachable & 1 << cell) == 0) continue;
+                    for (int dir = 0; dir < 4; dir++) {
+                        int next = neighbour(cell, dir);
+                        int behind = neighbour(cell, dir ^ 2);
+                        if (next != OUTSIDE && ((walls | boxes) & 1 << next) != 0) continue;
+                        if (behind != OUTSIDE && (boxes & 1 << behind) == 0) continue;
+
+                        int nextBoxes = (behind == OUTSIDE ? boxes : boxes & ~(1 << behind)) | 1 << cell;
+                        int nextState = region(walls, nextBoxes, next);
+                        if (alive[nextState]) continue;
+                        alive[nextState] = true;
+                        queue[tail++] = nextState;
+                    }
+                }
+            }
+
+            // dead: boxes inside and no player region they can be cleared from
+            int free = ~walls & ((1 << CELLS) - 1);
+            for (int boxes = free; boxes != 0; boxes = (boxes - 1) & free) {
+                boolean isDead = true;
+                for (int player = 0; player <= CELLS && isDead; player++) {
+                    if (player != OUTSIDE && ((walls | boxes) & 1 << player) != 0) continue;
+                    isDead = !alive[region(walls, boxes, player)];
+                }
+                if (!isDead) continue;
+                int key = key(walls, boxes);
+                dead[key >>> 6] |= 1L << key;
+            }
+        }
+        return new DeadlockPatternDatabase(dead);
+    }
+
+    // Cells the player reaches from 'player' (OUTSIDE bit set if it gets out of the window)
+    private static int reachable(int walls, int boxes, int player) {
+        int blocked = walls | boxes;
+        int result = 1 << player;
+        int stack = 1 << player;
+        while (stack != 0) {
+            int cell = Integer.numberOfTrailingZeros(stack);
+            stack &= stack - 1;
+            if (cell == OUTSIDE) {
+                // the outside touches every border cell
+                for (int border = 0; border < CELLS; border++) {
+                    if (border == SIZE * SIZE / 2 || (blocked & 1 << border) != 0 || (result & 1 << border) != 0) continue;
+                    result |= 1 << border;
+                    stack |= 1 << border;
+                }
+                continue;
+            }
+            for (int dir = 0; dir < 4; dir++) {
+                int next = neighbour(cell, dir);
+                if ((next != OUTSIDE && (blocked & 1 << next) != 0) || (result & 1 << next) != 0) continue;
+                result |= 1 << next;
+                stack |= 1 << next;
+            }
+        }
+        return result;
+    }
+
+    // State id: the boxes and the player's region, represented by its outside-most / lowest cell
+    private static int region(int walls, int boxes, int player) {
+        int reachable = reachable(walls, boxes, player);
+        int representative = (reachable & 1 << OUTSIDE) != 0 ? OUTSIDE : Integer.numberOfTrailingZeros(reachable);
+        return boxes * (CELLS + 1) + representative;
+    }
+
+    private static int key(int walls, int boxes) {
+        int key = 0;
+        for (int cell = CELLS - 1; cell >= 0; cell--) {
+            int digit = (walls & 1 << cell) != 0 ? WALL : (boxes & 1 << cell) != 0 ? BOX : FLOOR;
+            key = key * 3 + digit;
+        }
+        return key;
+    }
+
+    // --- binary file: magic, window width, window height, words of the bitset ---
+
+    public static DeadlockPatternDatabase read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != SIZE || in.readInt() != SIZE) {
+            throw new IOException("not a " + SIZE + "x" + SIZE + " deadlock pattern file");
+        }
+        long[] dead = new long[(KEYS + 63) / 64];
+        for (int i = 0; i < dead.length; i++) dead[i] = in.readLong();
+        return new DeadlockPatternDatabase(dead);
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(SIZE);
+            out.writeInt(SIZE);
+            for (long word : dead) out.writeLong(word);
+        }
+    }
+
+    // Generates the table into the resource file (or the given path)
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : "src/" + RESOURCE);
+        long startMillis = System.currentTimeMillis();
+        DeadlockPatternDatabase database = generate();
+        file.getParentFile().mkdirs();
+        database.write(file);
+        System.out.printf("%d dead windows of %d, generated in %d ms, written to %s\n",
+                          database.deadCount(), KEYS, System.currentTimeMillis() - startMillis, file.getPath());
+    }
+}
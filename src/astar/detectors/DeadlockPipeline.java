@@ -0,0 +1,143 @@
+package astar.detectors;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import astar.BoardCustom;
+
+// All deadlock checks of a push, run as a chain of DeadlockDetector stages, cheapest first, stopping
+// at the first one that reports a deadlock. One pipeline per thread, rebuilt when the level changes.
+//
+// Statistics (calls, hits and time per stage, summed over all threads) are off by default, they cost
+// more than the cheap stages themselves. Turn them on to tune pruning on a level set.
+
+public class DeadlockPipeline {
+
+    private static final ThreadLocal<DeadlockPipeline> pipelines = ThreadLocal.withInitial(DeadlockPipeline::new);
+
+    private static volatile boolean statisticsEnabled;
+    private static final Map<String, Counters> statistics = new LinkedHashMap<>(); // by stage name, guarded by itself
+
+    // The pipeline of the current thread for the current level
+    public static DeadlockPipeline get() {
+        DeadlockPipeline result = pipelines.get();
+        if (result.tiles != BoardCustom.tiles || result.deadSquares != DeadSquareDetector.isSimpleDeadlock) result.build();
+        return result;
+    }
+
+    private byte[] tiles;             // the level the stages were built for
+    private boolean[][] deadSquares;
+    private DeadlockDetector[] stages = new DeadlockDetector[0];
+    private Counters[] counters = new Counters[0];
+
+    private void build() {
+        tiles = BoardCustom.tiles;
+        deadSquares = DeadSquareDetector.isSimpleDeadlock;
+        boolean[] isSimpleDeadlock = DeadSquareDetector.toPositions(deadSquares);
+
+        List<DeadlockDetector> list = new ArrayList<>();
+        list.add(new DeadSquares(isSimpleDeadlock));
+        list.add(new ClosedDiagonalDeadlockDetector(isSimpleDeadlock));
+        list.add(FreezeDeadlockDetector.get());
+        list.add(BipartiteDeadlockDetector.get());
+        list.add(DeadlockPatternDatabase.get());
+        list.add(LearnedDeadlockTable.get());
+        list.add(CorralDeadlockDetector.get());
+        list.sort(Comparator.comparingInt(DeadlockDetector::cost));
+
+        stages = list.toArray(new DeadlockDetector[0]);
+        counters = new Counters[stages.length];
+        synchronized (statistics) {
+            for (int i = 0; i < stages.length; i++) counters[i] = statistics.computeIfAbsent(stages[i].name(), name -> new Counters());
+        }
+    }
+
+    /**
+     * Whether any stage finds that pushing the box at 'boxFrom' to 'boxTo' leads into a deadlock.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        if (statisticsEnabled) return isDeadlockCounted(board, boxFrom, boxTo);
+        for (DeadlockDetector stage : stages) {
+            if (stage.isDeadlock(board, boxFrom, boxTo)) return true;
+        }
+        return false;
+    }
+
+    private boolean isDeadlockCounted(BoardCustom board, int boxFrom, int boxTo) {
+        for (int i = 0; i < stages.length; i++) {
+            long start = System.nanoTime();
+            boolean dead = stages[i].isDeadlock(board, boxFrom, boxTo);
+            Counters stage = counters[i];
+            stage.nanos.add(System.nanoTime() - start);
+            stage.calls.increment();
+            if (dead) {
+                stage.hits.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void setStatisticsEnabled(boolean enabled) {
+        statisticsEnabled = enabled;
+    }
+
+    public static void resetStatistics() {
+        synchronized (statistics) {
+            for (Counters stage : statistics.values()) stage.reset();
+        }
+    }
+
+    // One line per stage: calls, deadlocks found, hit rate and total time
+    public static void printStatistics(PrintStream out) {
+        synchronized (statistics) {
+            for (Map.Entry<String, Counters> entry : statistics.entrySet()) {
+                Counters stage = entry.getValue();
+                long calls = stage.calls.sum(), hits = stage.hits.sum();
+                if (calls == 0) continue;
+                out.printf("%-32s calls %10d  deadlocks %9d (%5.1f%%)  time %8.1f ms\n", entry.getKey(), calls, hits,
+                           100.0 * hits / calls, stage.nanos.sum() / 1e6);
+            }
+        }
+    }
+
+    private static class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        void reset() {
+            calls.reset();
+            hits.reset();
+            nanos.reset();
+        }
+    }
+
+    // The new box position can't reach any target
+    private static class DeadSquares implements DeadlockDetector {
+        private final boolean[] isSimpleDeadlock;
+
+        DeadSquares(boolean[] isSimpleDeadlock) {
+            this.isSimpleDeadlock = isSimpleDeadlock;
+        }
+
+        @Override
+        public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+            return isSimpleDeadlock[boxTo];
+        }
+
+        @Override
+        public int cost() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package astar.detectors;
+
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+
+// Freeze deadlocks.
+// A box is frozen along an axis if a wall is next to it on that axis, if both sides are dead squares,
+// or if a box on either side is frozen itself. A box frozen along both axes never moves again, so a
+// frozen box off target is a deadlock. Boxes still being decided count as frozen (they block each other).
+// Only "free" results are remembered within one check: a box that can move with others treated as
+// blocked can move anyway. One detector per thread, the visited set is an epoch-stamped array.
+
+public class FreezeDeadlockDetector implements DeadlockDetector {
+
+    private static final ThreadLocal<FreezeDeadlockDetector> detectors = ThreadLocal.withInitial(FreezeDeadlockDetector::new);
+
+    public static FreezeDeadlockDetector get() {
+        return detectors.get();
+    }
+
+    private int cells = -1;
+
+    // in progress or known to move where stamp[i] == epoch, free[i] set once the box is known to move
+    private int epoch;
+    private int[] stamp;
+    private boolean[] free;
+
+    private boolean[][] source; // dead squares the flat copy was made from
+    private boolean[] isSimpleDeadlock;
+
+    // the push being checked
+    private BoardCustom board;
+    private int boxFrom, boxTo;
+
+    private void ensureCapacity() {
+        int size = BoardCustom.width * BoardCustom.height;
+        if (size != cells) {
+            cells = size;
+            stamp = new int[size];
+            free = new boolean[size];
+            epoch = 0;
+        }
+        if (source != DeadSquareDetector.isSimpleDeadlock) {
+            source = DeadSquareDetector.isSimpleDeadlock;
+            isSimpleDeadlock = DeadSquareDetector.toPositions(source);
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Whether pushing the box at 'boxFrom' to 'boxTo' freezes a box off target.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    @Override
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        ensureCapacity();
+        this.board = board;
+        this.boxFrom = boxFrom;
+        this.boxTo = boxTo;
+        try {
+            if (!BoardCustom.isTarget(boxTo)) return isFrozen(boxTo);
+
+            // on a target the box itself may freeze, but not its neighbours off target
+            int[] neighbours = BoardCustom.neighbours;
+            for (int dir = 0; dir < 4; dir++) {
+                int next = neighbours[boxTo * 4 + dir];
+                if (next != -1 && isBox(next) && !BoardCustom.isTarget(next) && isFrozen(next)) return true;
+            }
+            return false;
+        } finally {
+            this.board = null;
+        }
+    }
+
+    @Override
+    public int cost() {
+        return 25;
+    }
+
+    // Box flag on the board after the push
+    private boolean isBox(int position) {
+        return position == boxTo || position != boxFrom && board.isBox(position);
+    }
+
+    private boolean isFrozen(int position) {
+        if (stamp[position] == epoch) return !free[position];
+        stamp[position] = epoch;
+        free[position] = false;
+
+        // horizontal first, RIGHT and LEFT are directions 1 and 3, UP and DOWN 0 and 2
+        boolean frozen = isBlocked(position, 1) && isBlocked(position, 0);
+        if (frozen) stamp[position] = 0; // may depend on boxes still in progress, decide again if asked again
+        else free[position] = true;
+        return frozen;
+    }
+
+    // Whether the box at 'position' can't move along the axis of direction 'dir'
+    private boolean isBlocked(int position, int dir) {
+        int[] neighbours = BoardCustom.neighbours;
+        int one = neighbours[position * 4 + dir];
+        int other = neighbours[position * 4 + (dir ^ 2)];
+        if (one == -1 || other == -1 || TTile.isWall(BoardCustom.tiles[one]) || TTile.isWall(BoardCustom.tiles[other])) return true;
+        if (isSimpleDeadlock[one] && isSimpleDeadlock[other]) return true;
+        return isBox(one) && isFrozen(one) || isBox(other) && isFrozen(other);
+    }
+}
@@ -0,0 +1,269 @@
+package astar.detectors;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+import astar.util.LongIntHashMap;
+
+// Deadlocks learned during the search.
+// After a push, the pushed box and the boxes touching it (diagonals included) form a local configuration.
+// A small search solves that configuration alone: the other boxes are removed, the player starts where it
+// stands after the push, and the goal is to break the cluster up (no box off target touching another one),
+// which every solution has to do. Removing boxes only makes the level easier, so if that search runs out
+// of states, the position is dead. The search is bounded; configurations it can't decide count as alive.
+//
+// Results (dead or alive) are remembered in a fixed-size table shared by all search threads. A key is the
+// configuration itself (box count, player tile and box positions, 12 bits each), so entries never collide. Slots come
+// in sets of 4, a full set evicts by CLOCK: the hand skips (and clears) entries hit since it last passed.
+// Reference bits and hands are plain arrays; racing updates only make eviction less exact.
+
+public class LearnedDeadlockTable implements DeadlockDetector {
+
+    private static final int MIN_BOXES = 2;          // a lone box is left to the dead square check
+    private static final int MAX_BOXES = 4;
+    private static final int MAX_EXPANSIONS = 64;    // sub-search bound, states taken from the queue
+    private static final int BITS = 12;              // per position in a key
+    private static final int SET_SIZE = 4;
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static volatile LearnedDeadlockTable instance;
+
+    private final byte[] tiles; // the level the table was learned on
+    private final boolean[] isSimpleDeadlock;
+
+    private final AtomicLongArray entries; // key << 2 | 2 | dead, 0 = empty
+    private final byte[] referenced;
+    private final byte[] hands; // per set
+    private final int setMask;
+
+    private final ThreadLocal<SubSearch> searches = ThreadLocal.withInitial(SubSearch::new);
+
+    public LearnedDeadlockTable(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(SET_SIZE, capacity) / SET_SIZE);
+        this.tiles = BoardCustom.tiles;
+        boolean[][] deadSquares = DeadSquareDetector.isSimpleDeadlock; // of the current level, if computed
+        this.isSimpleDeadlock = deadSquares != null && deadSquares.length == BoardCustom.width && deadSquares[0].length == BoardCustom.height
+                              ? DeadSquareDetector.toPositions(deadSquares) : null;
+        this.entries = new AtomicLongArray(sets * SET_SIZE);
+        this.referenced = new byte[sets * SET_SIZE];
+        this.hands = new byte[sets];
+        this.setMask = sets - 1;
+    }
+
+    // The table of the current level, shared by all threads; a new level starts an empty one
+    public static LearnedDeadlockTable get() {
+        LearnedDeadlockTable result = instance;
+        if (result == null || result.tiles != BoardCustom.tiles) {
+            synchronized (LearnedDeadlockTable.class) {
+                result = instance;
+                if (result == null || result.tiles != BoardCustom.tiles) instance = result = new LearnedDeadlockTable(DEFAULT_CAPACITY);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether pushing the box at 'boxFrom' to 'boxTo' leaves a dead local configuration; looked up in the table,
+     * decided by a sub-search and remembered if not there yet.
+     * @param board the board before the push
+     * @param boxFrom
+     * @param boxTo
+     * @return
+     */
+    @Override
+    public boolean isDeadlock(BoardCustom board, int boxFrom, int boxTo) {
+        if (BoardCustom.width * BoardCustom.height >= (1 << BITS) - 1) return false;
+
+        // the pushed box and its neighbours, sorted
+        SubSearch search = searches.get();
+        int[] boxes = search.local;
+        int count = 0;
+        int x = BoardCustom.getX(boxTo), y = BoardCustom.getY(boxTo);
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int cellX = x + dx, cellY = y + dy;
+                if (cellX < 0 || cellY < 0 || cellX >= BoardCustom.width || cellY >= BoardCustom.height) continue;
+                int position = BoardCustom.getPacked(cellX, cellY);
+                if (position != boxTo && (position == boxFrom || !board.isBox(position))) continue;
+                if (count == MAX_BOXES) return false; // too big to decide cheaply
+                boxes[count++] = position;
+            }
+        }
+        if (count < MIN_BOXES) return false;
+
+        long key = encode(boxes, count, boxFrom);
+        int set = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & setMask;
+        int found = lookup(set, key);
+        if (found != -1) return found == 1;
+
+        boolean dead = search.isDead(boxes, count, boxFrom, isSimpleDeadlock);
+        store(set, key, dead);
+        return dead;
+    }
+
+    @Override
+    public int cost() {
+        return 300; // table hits are cheap, sub-searches are not
+    }
+
+    // 1 dead, 0 alive, -1 unknown
+    private int lookup(int set, long key) {
+        for (int i = set * SET_SIZE; i < (set + 1) * SET_SIZE; i++) {
+            long entry = entries.get(i);
+            if (entry >>> 2 != key) continue;
+            referenced[i] = 1;
+            return (int) (entry & 1);
+        }
+        return -1;
+    }
+
+    private void store(int set, long key, boolean dead) {
+        long entry = key << 2 | 2 | (dead ? 1 : 0);
+        int first = set * SET_SIZE;
+        for (int i = first; i < first + SET_SIZE; i++) {
+            if (entries.get(i) == 0 && entries.compareAndSet(i, 0, entry)) return;
+        }
+
+        // CLOCK: give entries hit since the last sweep another round
+        int hand = hands[set];
+        for (int step = 0; step < 2 * SET_SIZE; step++, hand = (hand + 1) % SET_SIZE) {
+            if (referenced[first + hand] != 0) {
+                referenced[first + hand] = 0;
+                continue;
+            }
+            break;
+        }
+        entries.set(first + hand, entry);
+        referenced[first + hand] = 0;
+        hands[set] = (byte) ((hand + 1) % SET_SIZE);
+    }
+
+    // box count - 1 (2 bits), the player tile and the sorted box positions + 1, BITS bits each
+    private static long encode(int[] boxes, int count, int player) {
+        long result = (long) (count - 1) << BITS | player;
+        for (int i = 0; i < count; i++) result = result << BITS | (boxes[i] + 1);
+        return result;
+    }
+
+    // Bounded search over the local configuration alone; one per thread, buffers reused
+    private static class SubSearch {
+        private static final int QUEUED = 1, EXPANDED = 0;
+
+        private int cells = -1;
+        private int epoch;
+        private int[] stamp;
+        private int[] queue;
+
+        private final LongIntHashMap visited = new LongIntHashMap(MAX_EXPANSIONS * MAX_BOXES * 8);
+        private final long[] open = new long[MAX_EXPANSIONS * MAX_BOXES * 4 + 1];
+        private final int[] local = new int[MAX_BOXES]; // the configuration isDeadlock() asks about
+        private final int[] boxes = new int[MAX_BOXES];
+        private final int[] next = new int[MAX_BOXES];
+
+        private void ensureCapacity() {
+            int size = BoardCustom.width * BoardCustom.height;
+            if (size == cells) return;
+            cells = size;
+            stamp = new int[size];
+            queue = new int[size];
+            epoch = 0;
+        }
+
+        boolean isDead(int[] start, int count, int player, boolean[] isSimpleDeadlock) {
+            ensureCapacity();
+            visited.clear();
+            int head = 0, tail = 0;
+            open[tail++] = encode(start, count, player);
+
+            // keys of queued states (player as pushed, value QUEUED) and of expanded ones (player normalized)
+            while (head < tail) {
+                long state = open[head++];
+                decode(state, count);
+                if (isSeparated(count) || head > MAX_EXPANSIONS) return false;
+
+                int canonical = flood((int) (state >>> (BITS * count)) & ((1 << BITS) - 1), count);
+                long key = encode(boxes, count, canonical);
+                int seen = visited.get(key);
+                if (seen != LongIntHashMap.NO_VALUE && seen != QUEUED) continue;
+                visited.put(key, EXPANDED);
+
+                int[] neighbours = BoardCustom.neighbours;
+                for (int i = 0; i < count; i++) {
+                    for (int dir = 0; dir < 4; dir++) {
+                        int target = neighbours[boxes[i] * 4 + dir];
+                        int side = neighbours[boxes[i] * 4 + (dir ^ 2)];
+                        if (target == -1 || side == -1 || stamp[side] != epoch || isBlocked(target, count)) continue;
+                        if (isSimpleDeadlock != null && isSimpleDeadlock[target]) continue;
+                        if (tail == open.length) return false; // out of room, undecided
+
+                        System.arraycopy(boxes, 0, next, 0, count);
+                        next[i] = target;
+                        Arrays.sort(next, 0, count);
+                        long child = encode(next, count, boxes[i]);
+                        if (visited.get(child) != LongIntHashMap.NO_VALUE) continue;
+                        visited.add(child, QUEUED);
+                        open[tail++] = child;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // No box off target touches another box (diagonals included): the configuration fell apart
+        private boolean isSeparated(int count) {
+            int width = BoardCustom.width;
+            for (int i = 0; i < count; i++) {
+                if (BoardCustom.isTarget(boxes[i])) continue;
+                for (int j = 0; j < count; j++) {
+                    if (i == j) continue;
+                    int dx = Math.abs(boxes[i] % width - boxes[j] % width);
+                    int dy = Math.abs(boxes[i] / width - boxes[j] / width);
+                    if (dx <= 1 && dy <= 1) return false;
+                }
+            }
+            return true;
+        }
+
+        private void decode(long state, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                boxes[i] = (int) (state & ((1 << BITS) - 1)) - 1;
+                state >>>= BITS;
+            }
+        }
+
+        private boolean isBlocked(int position, int count) {
+            if (TTile.isWall(BoardCustom.tiles[position])) return true;
+            for (int i = 0; i < count; i++) {
+                if (boxes[i] == position) return true;
+            }
+            return false;
+        }
+
+        // Marks the player's area; returns its lowest position
+        private int flood(int player, int count) {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+            int[] neighbours = BoardCustom.neighbours;
+            int min = player;
+            int head = 0, tail = 0;
+            stamp[player] = epoch;
+            queue[tail++] = player;
+            while (head < tail) {
+                int curr = queue[head++];
+                min = Math.min(min, curr);
+                for (int d = 0; d < 4; d++) {
+                    int n = neighbours[curr * 4 + d];
+                    if (n == -1 || stamp[n] == epoch || isBlocked(n, count)) continue;
+                    stamp[n] = epoch;
+                    queue[tail++] = n;
+                }
+            }
+            return min;
+        }
+    }
+}
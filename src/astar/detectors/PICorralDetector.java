@@ -1,5 +1,130 @@
 package astar.detectors;
 
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.PushGenerator;
+import astar.actions.TCompactPush;
+import astar.actions.TTile;
+
+// PI-corral pruning.
+// A corral is a connected area of tiles the player can't reach, together with the boxes in and around
+// it (flooded over non-wall tiles outside the player's area, boxes included). Such an area can only be
+// entered by pushing one of its boxes. It is a PI-corral if every push of its boxes the player can
+// make right now moves the box into the corral. If the corral still needs work (a box off target or
+// an empty target inside), one of those pushes has to happen at some point, and it can happen first:
+// pushes elsewhere never touch the corral. So only the pushes of the corral's boxes are kept.
+// Reordering keeps the push count, so push-optimal searches stay optimal (move counts may change).
+
 public class PICorralDetector {
-    
+
+    private static final ThreadLocal<PICorralDetector> detectors = ThreadLocal.withInitial(PICorralDetector::new);
+
+    public static PICorralDetector get() {
+        return detectors.get();
+    }
+
+    private int cells = -1;
+    private int boxes = -1;
+
+    // corral id per tile, valid only where stamp[i] == epoch
+    private int epoch;
+    private int[] stamp;
+    private int[] corral;
+    private int[] queue;
+
+    // per corral id / box index
+    private boolean[] isPI;
+    private int[] pushCounts;
+    private boolean[] keep;
+
+    private void ensureCapacity() {
+        int size = BoardCustom.width * BoardCustom.height;
+        if (size == cells && BoardCustom.boxCount == boxes) return;
+        cells = size;
+        boxes = BoardCustom.boxCount;
+        stamp = new int[size];
+        corral = new int[size];
+        queue = new int[size];
+        isPI = new boolean[BoardCustom.boxCount + 1];
+        pushCounts = new int[BoardCustom.boxCount + 1];
+        keep = new boolean[BoardCustom.boxCount + 1];
+        epoch = 0;
+    }
+
+    /**
+     * Restricts the pushes 'generator' produced for 'board' to the boxes of one PI-corral that needs work,
+     * the one with the fewest pushes. Leaves them untouched if there is no such corral.
+     * @param board the board the pushes were generated for
+     * @param generator
+     * @param pushCount
+     * @return number of remaining pushes; 0 if a corral needing work can't be entered (dead state)
+     */
+    public int prune(BoardCustom board, PushGenerator generator, int pushCount) {
+        if (pushCount == 0) return 0;
+        ensureCapacity();
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+
+        int[] positions = board.positions;
+        int corrals = 0;
+        for (int i = 1; i < positions.length; i++) {
+            if (stamp[positions[i]] != epoch) isPI[corrals] = flood(board, generator, positions[i], corrals++);
+        }
+
+        // I condition: no push the player can make moves a corral box into the player's area
+        int[] neighbours = BoardCustom.neighbours;
+        for (int i = 1; i < positions.length; i++) {
+            int box = positions[i];
+            int id = corral[box];
+            if (!isPI[id]) continue;
+            for (int dir = 0; dir < 4; dir++) {
+                int target = neighbours[box * 4 + dir];
+                int side = neighbours[box * 4 + (dir ^ 2)];
+                if (target == -1 || side == -1 || !generator.isReachable(side) || !board.isWalkable(target)) continue;
+                if (generator.isReachable(target)) {
+                    isPI[id] = false;
+                    break;
+                }
+            }
+        }
+
+        Arrays.fill(pushCounts, 0, corrals, 0);
+        for (int i = 0; i < pushCount; i++) {
+            pushCounts[corral[positions[TCompactPush.getBoxIndex(generator.get(i))]]]++;
+        }
+        int best = -1;
+        for (int id = 0; id < corrals; id++) {
+            if (isPI[id] && (best == -1 || pushCounts[id] < pushCounts[best])) best = id;
+        }
+        if (best == -1) return pushCount;
+
+        for (int i = 1; i < positions.length; i++) keep[i] = corral[positions[i]] == best;
+        return generator.retainBoxes(keep);
+    }
+
+    // Labels the corral containing the box at 'start'; returns whether it still needs work
+    private boolean flood(BoardCustom board, PushGenerator generator, int start, int id) {
+        int[] neighbours = BoardCustom.neighbours;
+        boolean needsWork = false;
+        int head = 0, tail = 0;
+        stamp[start] = epoch;
+        corral[start] = id;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int curr = queue[head++];
+            if (BoardCustom.isTarget(curr) != board.isBox(curr)) needsWork = true;
+            for (int d = 0; d < 4; d++) {
+                int next = neighbours[curr * 4 + d];
+                if (next == -1 || stamp[next] == epoch || TTile.isWall(BoardCustom.tiles[next]) || generator.isReachable(next)) continue;
+                stamp[next] = epoch;
+                corral[next] = id;
+                queue[tail++] = next;
+            }
+        }
+        return needsWork;
+    }
 }
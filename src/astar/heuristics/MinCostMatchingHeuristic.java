@@ -0,0 +1,169 @@
+package astar.heuristics;
+
+import java.util.Arrays;
+
+import astar.BoardCustom;
+
+// Sum of push distances of a minimum-cost assignment of boxes to targets (no two boxes on one target).
+// Solved with the Hungarian method (shortest augmenting paths with dual variables). A search can keep
+// the duals and the assignment of every node (see stateSize()); after a push only the pushed box's row
+// changes, so the child's matching is repaired with a single augmenting path, O(n^2), instead of
+// being solved again in O(n^3).
+//
+// Node data layout (ints): box position per row [rows], row duals [rows], column duals [columns],
+// row assigned to each column, 1-based, 0 = none [columns]. Rows are not kept in box order.
+
+public class MinCostMatchingHeuristic implements Heuristic {
+
+    // cost of a box that can't reach a target; a matching this expensive means the state is dead
+    public static final int INFINITE = 1 << 20;
+
+    private final PushDistanceTable table;
+    private final int rows;    // boxes
+    private final int columns; // targets
+
+    // scratch, 1-based as in the textbook formulation; index 0 is the virtual row/column
+    private final int[] u, v, p, way, minv;
+    private final boolean[] used;
+    private final int[] rowPositions;
+    private final int[] scratch;
+
+    public MinCostMatchingHeuristic(PushDistanceTable table) {
+        this.table = table;
+        this.rows = BoardCustom.boxCount;
+        this.columns = Math.max(rows, BoardCustom.targets.size());
+        u = new int[rows + 1];
+        v = new int[columns + 1];
+        p = new int[columns + 1];
+        way = new int[columns + 1];
+        minv = new int[columns + 1];
+        used = new boolean[columns + 1];
+        rowPositions = new int[rows + 1];
+        scratch = new int[stateSize()];
+    }
+
+    // ints of node data
+    public int stateSize() {
+        return 2 * rows + 2 * columns;
+    }
+
+    @Override
+    public double estimate(BoardCustom state) {
+        int result = estimate(state, scratch, 0);
+        return result >= INFINITE ? Double.POSITIVE_INFINITY : result;
+    }
+
+    /**
+     * Solves the matching from scratch and stores the node data at 'offset'.
+     * @param state
+     * @param data
+     * @param offset
+     * @return matching cost, at least INFINITE if some box can't be matched
+     */
+    public int estimate(BoardCustom state, int[] data, int offset) {
+        Arrays.fill(u, 0);
+        Arrays.fill(v, 0);
+        Arrays.fill(p, 0);
+        for (int i = 1; i <= rows; i++) {
+            rowPositions[i] = state.positions[i];
+            augment(i);
+        }
+        return store(data, offset);
+    }
+
+    /**
+     * Repairs the parent's matching after the box at 'boxFrom' was pushed to 'boxTo' and stores the child's data.
+     * @param boxFrom
+     * @param boxTo
+     * @param parentData
+     * @param parentOffset
+     * @param data
+     * @param offset
+     * @return matching cost, at least INFINITE if some box can't be matched
+     */
+    public int estimate(int boxFrom, int boxTo, int[] parentData, int parentOffset, int[] data, int offset) {
+        load(parentData, parentOffset);
+
+        int row = 1;
+        while (rowPositions[row] != boxFrom) row++;
+        rowPositions[row] = boxTo;
+        for (int j = 1; j <= columns; j++) {
+            if (p[j] == row) p[j] = 0;
+        }
+
+        // lowest row dual that keeps every reduced cost of the row non-negative
+        int min = Integer.MAX_VALUE;
+        for (int j = 1; j <= columns; j++) min = Math.min(min, cost(row, j) - v[j]);
+        u[row] = min;
+
+        augment(row);
+        return store(data, offset);
+    }
+
+    private int cost(int row, int column) {
+        if (column > table.distances.length) return 0; // dummy target, more boxes than targets
+        return Math.min(table.distances[column - 1][rowPositions[row]], INFINITE);
+    }
+
+    // Assigns row 'i' along a shortest augmenting path, adjusting the duals
+    private void augment(int i) {
+        p[0] = i;
+        int j0 = 0;
+        Arrays.fill(minv, Integer.MAX_VALUE);
+        Arrays.fill(used, false);
+        do {
+            used[j0] = true;
+            int i0 = p[j0];
+            int delta = Integer.MAX_VALUE;
+            int j1 = 0;
+            for (int j = 1; j <= columns; j++) {
+                if (used[j]) continue;
+                int cur = cost(i0, j) - u[i0] - v[j];
+                if (cur < minv[j]) {
+                    minv[j] = cur;
+                    way[j] = j0;
+                }
+                if (minv[j] < delta) {
+                    delta = minv[j];
+                    j1 = j;
+                }
+            }
+            for (int j = 0; j <= columns; j++) {
+                if (used[j]) {
+                    u[p[j]] += delta;
+                    v[j] -= delta;
+                } else {
+                    minv[j] -= delta;
+                }
+            }
+            j0 = j1;
+        } while (p[j0] != 0);
+
+        do {
+            int j1 = way[j0];
+            p[j0] = p[j1];
+            j0 = j1;
+        } while (j0 != 0);
+    }
+
+    private void load(int[] data, int offset) {
+        System.arraycopy(data, offset, rowPositions, 1, rows);
+        System.arraycopy(data, offset + rows, u, 1, rows);
+        System.arraycopy(data, offset + 2 * rows, v, 1, columns);
+        System.arraycopy(data, offset + 2 * rows + columns, p, 1, columns);
+    }
+
+    // Stores the node data and returns the matching cost
+    private int store(int[] data, int offset) {
+        System.arraycopy(rowPositions, 1, data, offset, rows);
+        System.arraycopy(u, 1, data, offset + rows, rows);
+        System.arraycopy(v, 1, data, offset + 2 * rows, columns);
+        System.arraycopy(p, 1, data, offset + 2 * rows + columns, columns);
+
+        long result = 0;
+        for (int j = 1; j <= columns; j++) {
+            if (p[j] != 0) result += cost(p[j], j);
+        }
+        return (int) Math.min(result, INFINITE);
+    }
+}
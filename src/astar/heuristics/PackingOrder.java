@@ -0,0 +1,231 @@
+package astar.heuristics;
+
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+
+// Packing order of the targets, by pulling boxes backwards from the targets.
+// A target is reachable if a box on it can be pulled to a tile some box starts on (off target). A box
+// parked on target t walls in target s if s is reachable on the empty board but not with that one box
+// on t: s has to be filled before t, unless s walls in t as well. Layers follow from these pairs, each
+// target one layer after the latest target it walls in (layer 0 packs first; longer cycles are cut after
+// as many rounds as there are targets). Pairs are checked one parked box at a time, so orders forced
+// only by several boxes together are not found. The analysis is bounded in total work; over the bound
+// no order is kept.
+//
+// Pulls are searched over (box position, player side) as in PushDistanceTable, with the player areas
+// around the pulled box flooded lazily per parked box.
+
+public class PackingOrder {
+
+    private static final long MAX_WORK = 20_000_000L; // pull states and flooded tiles over the whole analysis
+
+    private final int[] targetIndex; // by position, index in BoardCustom.targets, -1 off target
+    private final int words;
+    private final long[] wallsIn;    // [t * words ..], bitset of the targets a box on target t walls in
+    private final int[] layers;      // by target index
+    private int layerCount = 1;
+
+    // the analysis
+    private boolean[] blocked;  // walls and the parked box
+    private int[] regions;      // as PushDistanceTable.regions, valid where regionRound[position] == round
+    private int[] regionRound;
+    private int round;
+    private int[] stamp, queue; // pull search
+    private int epoch;
+    private int[] seen, flood;  // region floods
+    private int floodEpoch;
+    private long work;
+
+    public PackingOrder(BoardCustom initialState) {
+        int size = BoardCustom.width * BoardCustom.height;
+        int count = BoardCustom.targets.size();
+        targetIndex = new int[size];
+        Arrays.fill(targetIndex, -1);
+        for (int t = 0; t < count; t++) targetIndex[BoardCustom.targets.get(t)] = t;
+        words = (count + 63) >>> 6;
+        wallsIn = new long[count * words];
+        layers = new int[count];
+
+        boolean[] isSource = new boolean[size];
+        for (int i = 1; i < initialState.positions.length; i++) {
+            if (!BoardCustom.isTarget(initialState.positions[i])) isSource[initialState.positions[i]] = true;
+        }
+        blocked = new boolean[size];
+        for (int position = 0; position < size; position++) blocked[position] = TTile.isWall(BoardCustom.tiles[position]);
+        regions = new int[size * 4];
+        regionRound = new int[size];
+        Arrays.fill(regionRound, -1);
+        stamp = new int[size * 4];
+        queue = new int[size * 4];
+        seen = new int[size];
+        flood = new int[size];
+
+        // reachable targets on the empty board, then with one box parked on each target
+        boolean[] reachable = new boolean[count];
+        for (int s = 0; s < count; s++) reachable[s] = canLeave(BoardCustom.targets.get(s), isSource);
+        for (int t = 0; t < count && work <= MAX_WORK; t++) {
+            int parked = BoardCustom.targets.get(t);
+            blocked[parked] = true;
+            round++;
+            for (int s = 0; s < count; s++) {
+                if (s != t && reachable[s] && !canLeave(BoardCustom.targets.get(s), isSource)) wallsIn[t * words + (s >>> 6)] |= 1L << s;
+            }
+            blocked[parked] = false;
+            round++;
+        }
+
+        if (work > MAX_WORK) {
+            Arrays.fill(wallsIn, 0);
+        } else {
+            // targets walling in each other give no order
+            for (int t = 0; t < count; t++) {
+                for (int s = t + 1; s < count; s++) {
+                    if (!wallsIn(t, s) || !wallsIn(s, t)) continue;
+                    wallsIn[t * words + (s >>> 6)] &= ~(1L << s);
+                    wallsIn[s * words + (t >>> 6)] &= ~(1L << t);
+                }
+            }
+
+            // longest chains of walled-in targets, relaxed at most 'count' times
+            for (int pass = 0; pass < count; pass++) {
+                boolean changed = false;
+                for (int t = 0; t < count; t++) {
+                    for (int s = 0; s < count; s++) {
+                        if (wallsIn(t, s) && layers[t] <= layers[s] && layers[s] + 1 < count) {
+                            layers[t] = layers[s] + 1;
+                            changed = true;
+                        }
+                    }
+                }
+                if (!changed) break;
+            }
+            for (int layer : layers) layerCount = Math.max(layerCount, layer + 1);
+        }
+
+        // the analysis buffers are not needed any more
+        blocked = null;
+        regions = regionRound = stamp = queue = seen = flood = null;
+    }
+
+    private boolean wallsIn(int t, int s) {
+        return (wallsIn[t * words + (s >>> 6)] & (1L << s)) != 0;
+    }
+
+    public int getLayerCount() {
+        return layerCount;
+    }
+
+    // Packing layer of the target at 'position', 0 packs first; -1 off target
+    public int getLayer(int position) {
+        int t = targetIndex[position];
+        return t == -1 ? -1 : layers[t];
+    }
+
+    // Whether a box on 'position' walls in an empty target of 'state'
+    public boolean isOutOfOrder(BoardCustom state, int position) {
+        int t = targetIndex[position];
+        if (t == -1 || layerCount == 1) return false;
+        for (int w = 0; w < words; w++) {
+            long bits = wallsIn[t * words + w];
+            while (bits != 0) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (!state.isBox(BoardCustom.targets.get(s))) return true;
+            }
+        }
+        return false;
+    }
+
+    // Boxes on targets that wall in an empty target
+    public int getOutOfOrder(BoardCustom state) {
+        if (layerCount == 1) return 0;
+        int result = 0;
+        for (int t = 0; t < layers.length; t++) {
+            int target = BoardCustom.targets.get(t);
+            if (layers[t] > 0 && state.isBox(target) && isOutOfOrder(state, target)) result++;
+        }
+        return result;
+    }
+
+    // Whether the box at 'target' can be pulled to a source tile; a search over (box position, player side)
+    private boolean canLeave(int target, boolean[] isSource) {
+        int[] neighbours = BoardCustom.neighbours;
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+        int head = 0, tail = 0;
+        computeRegions(target);
+        for (int side = 0; side < 4; side++) {
+            if (regions[target * 4 + side] == -1) continue;
+            stamp[target * 4 + side] = epoch;
+            queue[tail++] = target * 4 + side;
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            int box = state >> 2;
+            int side = state & 3;
+            if (isSource[box]) return true;
+            work++;
+
+            // walk around the box
+            for (int other = 0; other < 4; other++) {
+                int next = box * 4 + other;
+                if (other == side || regions[next] != regions[state] || stamp[next] == epoch) continue;
+                stamp[next] = epoch;
+                queue[tail++] = next;
+            }
+
+            // pull: the box moves onto the player's tile, the player steps back
+            int player = neighbours[state];
+            int behind = neighbours[player * 4 + side];
+            if (behind == -1 || blocked[behind]) continue;
+            int next = player * 4 + side;
+            if (stamp[next] == epoch) continue;
+            computeRegions(player);
+            if (regions[next] == -1) continue;
+            stamp[next] = epoch;
+            queue[tail++] = next;
+        }
+        return false;
+    }
+
+    // Player areas around a box at 'box' with the current blocked tiles, once per round
+    private void computeRegions(int box) {
+        if (regionRound[box] == round) return;
+        regionRound[box] = round;
+        int[] neighbours = BoardCustom.neighbours;
+        for (int side = 0; side < 4; side++) regions[box * 4 + side] = -1;
+
+        for (int side = 0; side < 4; side++) {
+            int start = neighbours[box * 4 + side];
+            if (start == -1 || blocked[start] || regions[box * 4 + side] != -1) continue;
+
+            // flood from this side with the box in the way, labelling the other sides it reaches
+            if (++floodEpoch == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                floodEpoch = 1;
+            }
+            int head = 0, tail = 0;
+            seen[start] = floodEpoch;
+            flood[tail++] = start;
+            while (head < tail) {
+                int curr = flood[head++];
+                for (int d = 0; d < 4; d++) {
+                    int next = neighbours[curr * 4 + d];
+                    if (next == -1 || next == box || seen[next] == floodEpoch || blocked[next]) continue;
+                    seen[next] = floodEpoch;
+                    flood[tail++] = next;
+                }
+            }
+            work += tail;
+            for (int other = side; other < 4; other++) {
+                int tile = neighbours[box * 4 + other];
+                if (tile != -1 && seen[tile] == floodEpoch) regions[box * 4 + other] = box * 4 + side;
+            }
+        }
+    }
+}
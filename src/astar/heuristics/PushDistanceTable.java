@@ -0,0 +1,154 @@
+package astar.heuristics;
+
+import java.util.Arrays;
+
+import astar.BoardCustom;
+import astar.actions.TTile;
+
+// Push distances of a lone box (no other boxes on the board) from every tile to every target.
+// Built with one reverse BFS per target: the box is pulled away from the target, the player standing
+// next to it and needing a free tile behind itself. The player may walk around the box only where
+// the tiles on both sides are connected without passing the box.
+//
+// distances[target][position] = fewest pushes to get a box from 'position' onto BoardCustom.targets[target],
+// UNREACHABLE if impossible (walls or simple deadlock squares).
+//
+// Built from sources instead (for the pull search), distances[source][position] = fewest pushes to get a
+// box from the source onto 'position', i.e. fewest pulls back; one forward BFS per source.
+
+public class PushDistanceTable {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    public final int[][] distances;
+    public final int[] minDistances; // over all targets
+
+    // regions[position * 4 + dir] = id of the area the neighbour in 'dir' belongs to when a box is at
+    // 'position' (equal ids: the player can walk from one side to the other), -1 for walls
+    private final int[] regions;
+
+    public PushDistanceTable() {
+        this(null);
+    }
+
+    /**
+     * Distances to the targets, or from 'sources' if not null.
+     * @param sources packed box positions
+     */
+    public PushDistanceTable(int[] sources) {
+        int size = BoardCustom.width * BoardCustom.height;
+        regions = computeRegions(size);
+
+        distances = new int[sources == null ? BoardCustom.targets.size() : sources.length][];
+        minDistances = new int[size];
+        Arrays.fill(minDistances, UNREACHABLE);
+        int[] stateDistances = new int[size * 4];
+        int[] deque = new int[size * 4 * 2];
+        for (int t = 0; t < distances.length; t++) {
+            distances[t] = sources == null ? search(BoardCustom.targets.get(t), true, stateDistances, deque)
+                                           : search(sources[t], false, stateDistances, deque);
+            for (int p = 0; p < size; p++) minDistances[p] = Math.min(minDistances[p], distances[t][p]);
+        }
+    }
+
+    // 0-1 BFS over (box position, player side); pulls (or pushes) cost 1, walking around the box costs 0
+    private int[] search(int start, boolean pulls, int[] stateDistances, int[] deque) {
+        int[] neighbours = BoardCustom.neighbours;
+        int size = BoardCustom.width * BoardCustom.height;
+        Arrays.fill(stateDistances, UNREACHABLE);
+        int[] result = new int[size];
+        Arrays.fill(result, UNREACHABLE);
+
+        // the deque is a ring buffer; every state is pushed at most twice (once per distance improvement class)
+        int capacity = deque.length;
+        int head = 0, tail = 0;
+        for (int side = 0; side < 4; side++) {
+            if (regions[start * 4 + side] == -1) continue;
+            stateDistances[start * 4 + side] = 0;
+            deque[tail++] = start * 4 + side;
+        }
+
+        while (head != tail) {
+            int state = deque[head];
+            head = (head + 1) % capacity;
+            int box = state >> 2;
+            int side = state & 3;
+            int dist = stateDistances[state];
+            if (dist < result[box]) result[box] = dist;
+
+            // walk around the box
+            for (int other = 0; other < 4; other++) {
+                int next = box * 4 + other;
+                if (other == side || regions[next] != regions[state] || stateDistances[next] <= dist) continue;
+                stateDistances[next] = dist;
+                head = (head - 1 + capacity) % capacity;
+                deque[head] = next;
+            }
+
+            int next;
+            if (pulls) {
+                // pull: the box moves onto the player's tile, the player steps back
+                int player = neighbours[state];
+                int behind = neighbours[player * 4 + side];
+                if (behind == -1 || TTile.isWall(BoardCustom.tiles[behind])) continue;
+                next = player * 4 + side;
+            } else {
+                // push: the box moves away from the player, who takes its tile
+                int to = neighbours[box * 4 + (side ^ 2)];
+                if (to == -1 || TTile.isWall(BoardCustom.tiles[to])) continue;
+                next = to * 4 + side;
+            }
+            if (stateDistances[next] <= dist + 1) continue;
+            stateDistances[next] = dist + 1;
+            deque[tail] = next;
+            tail = (tail + 1) % capacity;
+        }
+
+        return result;
+    }
+
+    private int[] computeRegions(int size) {
+        int[] neighbours = BoardCustom.neighbours;
+        int[] result = new int[size * 4];
+        Arrays.fill(result, -1);
+        int[] stamp = new int[size];
+        int[] queue = new int[size];
+        int epoch = 0;
+
+        for (int box = 0; box < size; box++) {
+            if (TTile.isWall(BoardCustom.tiles[box])) continue;
+            for (int side = 0; side < 4; side++) {
+                int start = neighbours[box * 4 + side];
+                if (start == -1 || TTile.isWall(BoardCustom.tiles[start]) || result[box * 4 + side] != -1) continue;
+
+                // flood from this side with the box as a wall, labelling the other sides it reaches
+                epoch++;
+                int head = 0, tail = 0;
+                stamp[start] = epoch;
+                queue[tail++] = start;
+                while (head < tail) {
+                    int curr = queue[head++];
+                    for (int d = 0; d < 4; d++) {
+                        int next = neighbours[curr * 4 + d];
+                        if (next == -1 || next == box || stamp[next] == epoch || TTile.isWall(BoardCustom.tiles[next])) continue;
+                        stamp[next] = epoch;
+                        queue[tail++] = next;
+                    }
+                }
+                for (int other = side; other < 4; other++) {
+                    int tile = neighbours[box * 4 + other];
+                    if (tile != -1 && stamp[tile] == epoch) result[box * 4 + other] = box * 4 + side;
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getDistance(int target, int position) {
+        return distances[target][position];
+    }
+
+    public int getMinDistance(int position) {
+        return minDistances[position];
+    }
+}
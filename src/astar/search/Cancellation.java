@@ -0,0 +1,14 @@
+package astar.search;
+
+// Cooperative cancellation shared by the searches: an interrupt of the searching thread stops them.
+// The flag is only polled every 256 expansions.
+public final class Cancellation {
+  public static final int CHECK_MASK = 0xFF;
+
+  private Cancellation() {}
+
+  // Whether the search should stop after 'expansions' expansions (checks the interrupt flag every CHECK_MASK + 1)
+  public static boolean isRequested(int expansions) {
+    return (expansions & CHECK_MASK) == 0 && Thread.currentThread().isInterrupted();
+  }
+}
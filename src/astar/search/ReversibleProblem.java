@@ -0,0 +1,11 @@
+package astar.search;
+
+// S = state type, A = action type
+// A problem whose actions can be applied to a state in place and taken back again,
+// for searches that walk a single state instead of cloning one per node (e.g. IDA*).
+public interface ReversibleProblem<S, A> extends HeuristicProblem<S, A> {
+  int apply(S state, A action);            // performs action on state, returns what undo() needs
+  void undo(S state, A action, int token); // reverts apply(); token is its return value
+  long key(S state);                       // 64-bit hash of the state
+  S copy(S state);
+}
@@ -0,0 +1,86 @@
+package astar.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import agents.ArtificialAgent;
+import astar.AStarProblem;
+import astar.BoardAStar;
+import astar.BoardCustom;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.Sokoban;
+import game.SokobanResult;
+import game.SokobanResultType;
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+
+// Streaming of ArtificialAgent plans through SokobanSim: the agent emits the first half of its plan from
+// think() and waits there until the simulator has played it, then returns the second half. The emitted
+// moves must be played before think() returns and the returned ones after them.
+public class AgentStreamingTest {
+
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    static class StreamingAgent extends ArtificialAgent {
+        final List<EDirection> played = new ArrayList<>(); // by the simulator, in order; guarded by itself
+        List<EDirection> plan;
+        int emitted;
+        int playedBeforeReturn = -1;
+
+        @Override
+        public EDirection act(long waitMillis) throws InterruptedException {
+            EDirection direction = super.act(waitMillis);
+            if (direction != null) {
+                synchronized (played) {
+                    played.add(direction);
+                    played.notifyAll();
+                }
+            }
+            return direction;
+        }
+
+        @Override
+        protected List<EDirection> think(BoardCompact board) {
+            plan = new ArrayList<>();
+            Solution<BoardCustom, TAction> solution = BoardAStar.search(new AStarProblem(new BoardCustom(board), board));
+            for (TAction action : solution.actions) plan.addAll(Arrays.asList(action.getDirections()));
+
+            emitted = plan.size() / 2;
+            emit(new ArrayList<>(plan.subList(0, emitted)));
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS / 2;
+            synchronized (played) {
+                try {
+                    for (long left; played.size() < emitted && (left = deadline - System.currentTimeMillis()) > 0; ) {
+                        played.wait(left);
+                    }
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                playedBeforeReturn = played.size();
+            }
+            return new ArrayList<>(plan.subList(emitted, plan.size()));
+        }
+    }
+
+    public static void main(String[] args) {
+        StreamingAgent agent = new StreamingAgent();
+        SokobanResult result = Sokoban.simAgentLevel(null, "levels/Aymeric_du_Peloux_1_Minicosmos.sok", 1, TIMEOUT_MILLIS, agent, false, false);
+
+        if (result.getResult() != SokobanResultType.VICTORY) {
+            throw new Error("[FAILED TEST] Streamed plan: level not solved, " + result.getResult());
+        }
+        if (agent.playedBeforeReturn != agent.emitted) {
+            throw new Error("[FAILED TEST] Streamed plan: " + agent.playedBeforeReturn + " of " + agent.emitted
+                            + " emitted moves played before think() returned");
+        }
+        synchronized (agent.played) {
+            if (!agent.played.equals(agent.plan)) {
+                throw new Error("[FAILED TEST] Streamed plan: played " + agent.played + ", planned " + agent.plan);
+            }
+        }
+        System.out.println("Streamed " + agent.emitted + " of " + agent.plan.size() + " moves while thinking");
+        System.out.println("Agent streaming test successful!");
+    }
+}
@@ -0,0 +1,66 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import astar.AStarProblem;
+import astar.BidirectionalSearch;
+import astar.BoardCustom;
+import astar.HDAStar;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+
+// Bidirectional (push + pull) search against forward-only search.
+// Every level of the given level sets is solved by single-threaded HDAStar (push-optimal) and by
+// BidirectionalSearch, both with a timeout; prints expanded nodes, milliseconds and costs (pushes) per
+// level and the totals. Bidirectional costs may be higher, it stops at the first meeting.
+//
+// usage: BidirectionalBenchmark [timeout-millis] [level-set ...]
+public class BidirectionalBenchmark {
+
+    public static void main(String[] args) {
+        long timeout = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        List<String> levelSets = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) levelSets.add(args[i]);
+        if (levelSets.isEmpty()) {
+            levelSets.add("Aymeric_du_Peloux_2_Microcosmos.sok");
+            levelSets.add("DavidWSkinner_Sasquatch_I.sok");
+        }
+
+        for (String levelSet : levelSets) {
+            List<BoardCompact> levels = HDAStarScalingBenchmark.readLevels(new File("levels", levelSet));
+            System.out.printf("\n%s (%d levels, timeout %d ms)\n", levelSet, levels.size(), timeout);
+            System.out.printf("%5s %24s %24s\n", "level", "forward", "bidirectional");
+
+            long[][] totals = new long[2][3];
+            for (int i = 0; i < levels.size(); i++) {
+                long[][] results = new long[2][];
+                for (int mode = 0; mode < 2; mode++) {
+                    results[mode] = solve(levels.get(i), mode == 1, timeout);
+                    if (results[mode] == null) continue;
+                    for (int k = 0; k < 3; k++) totals[mode][k] += results[mode][k];
+                }
+                System.out.printf("%5d %24s %24s\n", i + 1, format(results[0]), format(results[1]));
+            }
+            System.out.printf("%5s %24s %24s\n", "total", format(totals[0]), format(totals[1]));
+        }
+    }
+
+    // { expanded nodes, milliseconds, cost }, null if not solved in time
+    private static long[] solve(BoardCompact compact, boolean bidirectional, long timeout) {
+        AStarProblem problem = new AStarProblem(new BoardCustom(compact), compact, true);
+        long startMillis = System.currentTimeMillis();
+        Solution<BoardCustom, TAction> solution = bidirectional ? BidirectionalSearch.search(problem, timeout)
+                                                                : HDAStar.search(problem, 1, timeout);
+        long millis = System.currentTimeMillis() - startMillis;
+        if (solution == null || millis > timeout) return null;
+        SolutionReplay.check(compact, solution.actions, bidirectional ? "bidirectional" : "forward");
+        return new long[] { solution.searchedNodes, millis, (long) solution.pathCost };
+    }
+
+    private static String format(long[] result) {
+        return result == null ? "timeout" : result[0] + " / " + result[1] + " ms (" + result[2] + ")";
+    }
+}
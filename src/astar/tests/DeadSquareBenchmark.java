@@ -0,0 +1,61 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import astar.detectors.DeadSquareDetector;
+import game.board.compact.BoardCompact;
+
+// Time of the dead-square precomputation (dead squares, target masks and pull distances) on the
+// largest boards of all level sets in levels/, by area. Each board is run a few times, the best
+// time is printed.
+//
+// usage: DeadSquareBenchmark [board-count] [runs]
+public class DeadSquareBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<Level> levels = new ArrayList<>();
+        File[] files = new File("levels").listFiles((dir, name) -> name.endsWith(".sok"));
+        if (files == null) {
+            System.out.printf("can't find level directory %s\n", new File("levels").getAbsolutePath());
+            return;
+        }
+        for (File file : files) {
+            List<BoardCompact> boards = HDAStarScalingBenchmark.readLevels(file);
+            for (int i = 0; i < boards.size(); i++) levels.add(new Level(file.getName(), i + 1, boards.get(i)));
+        }
+        levels.sort(Comparator.comparingInt((Level level) -> level.board.width() * level.board.height()).reversed());
+
+        System.out.printf("%-40s %5s %7s %7s %10s\n", "level set", "level", "size", "targets", "best ms");
+        double total = 0;
+        for (Level level : levels.subList(0, Math.min(count, levels.size()))) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                DeadSquareDetector.detect(level.board);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            total += best / 1e6;
+            System.out.printf("%-40s %5d %3dx%-3d %7d %10.3f\n", level.levelSet, level.index, level.board.width(), level.board.height(),
+                              DeadSquareDetector.pullDistances.length, best / 1e6);
+        }
+        System.out.printf("%-40s %5s %7s %7s %10.3f\n", "total", "", "", "", total);
+    }
+
+    private static class Level {
+        final String levelSet;
+        final int index;
+        final BoardCompact board;
+
+        Level(String levelSet, int index, BoardCompact board) {
+            this.levelSet = levelSet;
+            this.index = index;
+            this.board = board;
+        }
+    }
+}
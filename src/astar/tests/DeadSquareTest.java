@@ -25,7 +25,36 @@ public class DeadSquareTest {
 		}
     }
 
+    // walls '#', dead squares 'X', squares a box can still be pushed to a target from '_'
+    private static final String[] EXPECTED_DEAD_SQUARES = {
+        "########",
+        "#XXXXXX#",
+        "#X____X#",
+        "#X____X#",
+        "###__###",
+        "###XX###",
+        "########",
+    };
+
+    static void testDeadSquares() {
+        File testLevelFile = new File("./src/astar/tests/test_levels/dead_squares.sok");
+        BoardCompact bc = Board.fromFileSok(testLevelFile, 1).makeBoardCompact();
+        boolean[][] dead = DeadSquareDetector.detect(bc);
+        for (int y = 0 ; y < bc.height() ; ++y) {
+            for (int x = 0 ; x < bc.width() ; ++x) {
+                char expected = EXPECTED_DEAD_SQUARES[y].charAt(x);
+                char actual = CTile.isWall(bc.tile(x, y)) ? '#' : (dead[x][y] ? 'X' : '_');
+                if (actual != expected) {
+                    throw new Error("[FAILED TEST] Dead square at " + x + ", " + y + " is '" + actual + "', expected '" + expected + "'");
+                }
+            }
+        }
+        System.out.println("Dead square test successful!\n");
+    }
+
     public static void main(String[] args) {
+        testDeadSquares();
+
         File levels = new File("levels/Aymeric_du_Peloux_1_Minicosmos.sok");
         if (!levels.canRead()) {
             System.out.printf("can't find level file %s\n", levels.getAbsolutePath());
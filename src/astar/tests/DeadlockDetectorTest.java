@@ -0,0 +1,48 @@
+package astar.tests;
+
+import java.io.File;
+
+import astar.BoardCustom;
+import astar.detectors.ClosedDiagonalDeadlockDetector;
+import astar.detectors.CorralDeadlockDetector;
+import astar.detectors.DeadSquareDetector;
+import astar.detectors.DeadlockDetector;
+import astar.detectors.DeadlockPipeline;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+
+public class DeadlockDetectorTest {
+
+    public static void main(String[] args) {
+        File testLevelFile = new File("./src/astar/tests/test_levels/closed_diagonal.sok");
+        BoardCompact boardCompact = Board.fromFileSok(testLevelFile, 1).makeBoardCompact();
+        BoardCustom board = new BoardCustom(boardCompact);
+        DeadSquareDetector.detect(boardCompact);
+        System.out.printf("testing level in %s\n\n", testLevelFile.getName());
+        board.debugPrint();
+
+        boolean[] isSimpleDeadlock = DeadSquareDetector.toPositions(DeadSquareDetector.isSimpleDeadlock);
+        int box = BoardCustom.getPacked(4, 2);
+
+        // pushing the box left closes the square above the other box in
+        testPush(new ClosedDiagonalDeadlockDetector(isSimpleDeadlock), board, box, BoardCustom.getPacked(3, 2), true);
+        testPush(new ClosedDiagonalDeadlockDetector(isSimpleDeadlock), board, box, BoardCustom.getPacked(4, 3), false);
+        testPush(CorralDeadlockDetector.get(), board, box, BoardCustom.getPacked(3, 2), true);
+        testPush(CorralDeadlockDetector.get(), board, box, BoardCustom.getPacked(4, 3), false);
+
+        DeadlockPipeline pipeline = DeadlockPipeline.get();
+        if (!pipeline.isDeadlock(board, box, BoardCustom.getPacked(3, 2)) || pipeline.isDeadlock(board, box, BoardCustom.getPacked(4, 3))) {
+            throw new Error("[FAILED TEST] Deadlock pipeline");
+        }
+        System.out.println("Deadlock pipeline test successful!");
+    }
+
+    private static void testPush(DeadlockDetector detector, BoardCustom b, int boxFrom, int boxTo, boolean correctAnswer) {
+        if (detector.isDeadlock(b, boxFrom, boxTo) == correctAnswer) {
+            System.out.println(detector.name() + " test successful!");
+            return;
+        }
+        throw new Error("[FAILED TEST] " + detector.name() + " push " + BoardCustom.getX(boxFrom) + ", " + BoardCustom.getY(boxFrom)
+                        + " -> " + BoardCustom.getX(boxTo) + ", " + BoardCustom.getY(boxTo));
+    }
+}
@@ -0,0 +1,79 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import astar.AStarProblem;
+import astar.BoardCustom;
+import astar.HDAStar;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+import utils.SokReader;
+import utils.TextLevelS4JL;
+
+// Measures how HDAStar scales with the number of worker threads.
+// Every level of the given level sets is solved (push-optimal, canonical states) with 1, 2, 4, ...
+// threads up to the limit; search time excludes the per-level setup. Levels not solved within the
+// timeout count with the full timeout.
+//
+// usage: HDAStarScalingBenchmark [max-threads] [timeout-millis] [level-set ...]
+public class HDAStarScalingBenchmark {
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long timeout = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+        List<String> levelSets = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) levelSets.add(args[i]);
+        if (levelSets.isEmpty()) {
+            levelSets.add("Aymeric_du_Peloux_1_Minicosmos.sok");
+            levelSets.add("DavidWSkinner_Microban.sok");
+        }
+
+        System.out.printf("available processors: %d\n", Runtime.getRuntime().availableProcessors());
+        for (String levelSet : levelSets) {
+            List<BoardCompact> levels = readLevels(new File("levels", levelSet));
+            System.out.printf("\n%s (%d levels, timeout %d ms)\n", levelSet, levels.size(), timeout);
+
+            long baseMillis = 0;
+            for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+                int solved = 0;
+                long nodes = 0, millis = 0;
+                for (BoardCompact compact : levels) {
+                    AStarProblem problem = new AStarProblem(new BoardCustom(compact), compact, true);
+                    long startMillis = System.currentTimeMillis();
+                    Solution<BoardCustom, TAction> solution = HDAStar.search(problem, threads, timeout);
+                    long searchMillis = System.currentTimeMillis() - startMillis;
+                    if (solution != null && searchMillis <= timeout) {
+                        solved++;
+                        nodes += solution.searchedNodes;
+                        millis += searchMillis;
+                    } else {
+                        millis += timeout;
+                    }
+                }
+                if (threads == 1) baseMillis = millis;
+                System.out.printf("threads %2d   solved %3d   nodes %10d   time %8d ms   speedup %.2f\n",
+                                  threads, solved, nodes, millis, (double) baseMillis / Math.max(1, millis));
+            }
+        }
+    }
+
+    static List<BoardCompact> readLevels(File file) {
+        List<BoardCompact> result = new ArrayList<>();
+        SokReader reader = new SokReader(file);
+        while (true) {
+            try {
+                TextLevelS4JL level = reader.readNext();
+                if (level == null) break;
+                result.add(Board.fromTextLevel(level).makeBoardCompact());
+            } catch (RuntimeException e) {
+                continue; // malformed or unsupported level
+            }
+        }
+        reader.close();
+        return result;
+    }
+}
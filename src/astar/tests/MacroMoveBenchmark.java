@@ -0,0 +1,68 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import astar.AStarProblem;
+import astar.BoardCustom;
+import astar.HDAStar;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+
+// Node-count reduction of macro moves.
+// Every level of the given level sets is solved push-optimally (single-threaded HDAStar, which has a
+// timeout) without macros, with tunnel macros, and with tunnel and goal-room macros; prints expanded
+// nodes and solution costs (pushes) per level, and node totals over the levels all runs solved. Tunnel
+// macros must not change the costs; goal-room macros may.
+//
+// usage: MacroMoveBenchmark [timeout-millis] [level-set ...]
+public class MacroMoveBenchmark {
+
+    public static void main(String[] args) {
+        long timeout = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        List<String> levelSets = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) levelSets.add(args[i]);
+        if (levelSets.isEmpty()) {
+            levelSets.add("Aymeric_du_Peloux_2_Microcosmos.sok");
+            levelSets.add("DavidWSkinner_Sasquatch_I.sok");
+        }
+
+        for (String levelSet : levelSets) {
+            List<BoardCompact> levels = HDAStarScalingBenchmark.readLevels(new File("levels", levelSet));
+            System.out.printf("\n%s (%d levels, timeout %d ms)\n", levelSet, levels.size(), timeout);
+            System.out.printf("%5s %16s %16s %16s\n", "level", "plain", "tunnels", "goal rooms");
+
+            long[] totals = new long[3];
+            for (int i = 0; i < levels.size(); i++) {
+                long[][] results = new long[3][];
+                boolean solved = true;
+                for (int mode = 0; mode < 3; mode++) {
+                    results[mode] = solve(levels.get(i), mode >= 1, mode >= 2, timeout);
+                    solved &= results[mode] != null;
+                }
+                System.out.printf("%5d %16s %16s %16s\n", i + 1, format(results[0]), format(results[1]), format(results[2]));
+                if (!solved) continue;
+                for (int mode = 0; mode < 3; mode++) totals[mode] += results[mode][0];
+            }
+            System.out.printf("%5s %16d %16d %16d\n", "total", totals[0], totals[1], totals[2]);
+        }
+    }
+
+    // { expanded nodes, cost }, null if not solved in time
+    private static long[] solve(BoardCompact compact, boolean tunnels, boolean rooms, long timeout) {
+        AStarProblem problem = new AStarProblem(new BoardCustom(compact), compact, true);
+        problem.setTunnelMacros(tunnels);
+        problem.setGoalRoomMacros(rooms);
+        long startMillis = System.currentTimeMillis();
+        Solution<BoardCustom, TAction> solution = HDAStar.search(problem, 1, timeout);
+        if (solution == null || System.currentTimeMillis() - startMillis > timeout) return null;
+        SolutionReplay.check(compact, solution.actions, "tunnels " + tunnels + ", goal rooms " + rooms);
+        return new long[] { solution.searchedNodes, (long) solution.pathCost };
+    }
+
+    private static String format(long[] result) {
+        return result == null ? "timeout" : result[0] + " (" + result[1] + ")";
+    }
+}
@@ -0,0 +1,38 @@
+package astar.tests;
+
+import java.io.File;
+
+import astar.AStarProblem;
+import astar.BoardAStar;
+import astar.BoardCustom;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+
+public class OptimalSolutionTest {
+
+    // move-optimal solution lengths of Minicosmos levels 1..10
+    private static final int[] OPTIMAL_STEPS = { 37, 60, 69, 71, 104, 99, 61, 93, 85, 102 };
+
+    public static void main(String[] args) {
+        File levelFile = new File("./levels/Aymeric_du_Peloux_1_Minicosmos.sok");
+        for (int i = 0; i < OPTIMAL_STEPS.length; i++) {
+            int level = i + 1;
+            BoardCompact boardCompact = Board.fromFileSok(levelFile, level).makeBoardCompact();
+            Solution<BoardCustom, TAction> solution = BoardAStar.search(new AStarProblem(new BoardCustom(boardCompact), boardCompact));
+            if (solution == null) {
+                throw new Error("[FAILED TEST] Minicosmos level " + level + " not solved");
+            }
+            int steps = 0;
+            for (TAction action : solution.actions) {
+                steps += action.getDirections().length;
+            }
+            if (steps != OPTIMAL_STEPS[i]) {
+                throw new Error("[FAILED TEST] Minicosmos level " + level + " solved in " + steps + " steps, optimum is " + OPTIMAL_STEPS[i]);
+            }
+            System.out.println("Minicosmos level " + level + " optimal in " + steps + " steps");
+        }
+        System.out.println("Optimal solution test successful!");
+    }
+}
@@ -0,0 +1,67 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import astar.AStarProblem;
+import astar.BoardCustom;
+import astar.HDAStar;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+
+// Node-count reduction of PI-corral pruning.
+// Every level of the given level sets is solved push-optimally (single-threaded HDAStar, which has a
+// timeout) without and with pruning; prints expanded nodes per level and the totals over the levels
+// both runs solved.
+//
+// usage: PICorralBenchmark [timeout-millis] [level-set ...]
+public class PICorralBenchmark {
+
+    public static void main(String[] args) {
+        long timeout = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        List<String> levelSets = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) levelSets.add(args[i]);
+        if (levelSets.isEmpty()) {
+            levelSets.add("Aymeric_du_Peloux_1_Minicosmos.sok");
+            levelSets.add("Aymeric_du_Peloux_2_Microcosmos.sok");
+            levelSets.add("DavidWSkinner_Microban.sok");
+        }
+
+        for (String levelSet : levelSets) {
+            List<BoardCompact> levels = HDAStarScalingBenchmark.readLevels(new File("levels", levelSet));
+            System.out.printf("\n%s (%d levels, timeout %d ms)\n", levelSet, levels.size(), timeout);
+            System.out.printf("%5s %12s %12s %9s\n", "level", "nodes", "pruned", "reduction");
+
+            long totalNodes = 0, totalPruned = 0;
+            for (int i = 0; i < levels.size(); i++) {
+                long nodes = solve(levels.get(i), false, timeout);
+                long pruned = solve(levels.get(i), true, timeout);
+                if (nodes < 0 || pruned < 0) {
+                    System.out.printf("%5d %12s %12s\n", i + 1, nodes < 0 ? "timeout" : nodes, pruned < 0 ? "timeout" : pruned);
+                    continue;
+                }
+                totalNodes += nodes;
+                totalPruned += pruned;
+                System.out.printf("%5d %12d %12d %8.1f%%\n", i + 1, nodes, pruned, reduction(nodes, pruned));
+            }
+            System.out.printf("%5s %12d %12d %8.1f%%\n", "total", totalNodes, totalPruned, reduction(totalNodes, totalPruned));
+        }
+    }
+
+    // expanded nodes, -1 if not solved in time
+    private static long solve(BoardCompact compact, boolean pruning, long timeout) {
+        AStarProblem problem = new AStarProblem(new BoardCustom(compact), compact, true);
+        problem.setPICorralPruning(pruning);
+        long startMillis = System.currentTimeMillis();
+        Solution<BoardCustom, TAction> solution = HDAStar.search(problem, 1, timeout);
+        if (solution == null || System.currentTimeMillis() - startMillis > timeout) return -1;
+        SolutionReplay.check(compact, solution.actions, "PI-corral pruning " + pruning);
+        return solution.searchedNodes;
+    }
+
+    private static double reduction(long nodes, long pruned) {
+        return nodes == 0 ? 0 : 100.0 * (nodes - pruned) / nodes;
+    }
+}
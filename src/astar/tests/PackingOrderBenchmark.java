@@ -0,0 +1,76 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import astar.AStar;
+import astar.AStarProblem;
+import astar.BoardCustom;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+
+// Effect of the packing-order penalty on the anytime search (ARA*, as MyAgent runs it when optimal
+// solutions are not required). Every level of the given level sets is searched without and with the
+// penalty; prints the packing layers, the time to the first solution and its cost (pushes) per level,
+// and the number of levels solved within the budget.
+//
+// usage: PackingOrderBenchmark [budget-millis] [level-set ...]
+public class PackingOrderBenchmark {
+
+    private static final double INITIAL_WEIGHT = 3.0;
+    private static final double WEIGHT_STEP = 0.5;
+
+    public static void main(String[] args) {
+        long budget = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        List<String> levelSets = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) levelSets.add(args[i]);
+        if (levelSets.isEmpty()) {
+            levelSets.add("DavidWSkinner_Sasquatch_I.sok");
+            levelSets.add("Aymeric_du_Peloux_5_Cosmopoly.sok");
+        }
+
+        for (String levelSet : levelSets) {
+            List<BoardCompact> levels = HDAStarScalingBenchmark.readLevels(new File("levels", levelSet));
+            System.out.printf("\n%s (%d levels, budget %d ms)\n", levelSet, levels.size(), budget);
+            System.out.printf("%5s %6s %18s %18s\n", "level", "layers", "plain", "penalty");
+
+            int[] solved = new int[2];
+            for (int i = 0; i < levels.size(); i++) {
+                long[][] results = new long[2][];
+                int layers = 0;
+                for (int mode = 0; mode < 2; mode++) {
+                    BoardCompact compact = levels.get(i);
+                    AStarProblem problem = new AStarProblem(new BoardCustom(compact), compact, true);
+                    problem.setGoalRoomMacros(true);
+                    problem.setPackingPenalty(mode == 1);
+                    layers = problem.getPackingOrder().getLayerCount();
+                    results[mode] = solve(compact, problem, budget);
+                    if (results[mode] != null) solved[mode]++;
+                }
+                System.out.printf("%5d %6d %18s %18s\n", i + 1, layers, format(results[0]), format(results[1]));
+            }
+            System.out.printf("%5s %6s %18d %18d\n", "total", "", solved[0], solved[1]);
+        }
+    }
+
+    // { milliseconds to the first solution, its cost }, null if none within the budget; the best plan is replayed
+    private static long[] solve(BoardCompact compact, AStarProblem problem, long budget) {
+        long startMillis = System.currentTimeMillis();
+        long[] first = new long[2];
+        Solution<BoardCustom, TAction> solution = AStar.searchAnytime(problem, INITIAL_WEIGHT, WEIGHT_STEP, budget, (s, bound) -> {
+            if (first[0] == 0) {
+                first[0] = Math.max(1, System.currentTimeMillis() - startMillis);
+                first[1] = (long) s.pathCost;
+            }
+        });
+        if (solution == null || first[0] == 0) return null;
+        SolutionReplay.check(compact, problem.toPlayable(solution.actions), "ARA*");
+        return first;
+    }
+
+    private static String format(long[] result) {
+        return result == null ? "-" : result[0] + " ms (" + result[1] + ")";
+    }
+}
@@ -0,0 +1,39 @@
+package astar.tests;
+
+import java.util.List;
+
+import astar.actions.TAction;
+import game.actions.EDirection;
+import game.actions.compact.CMove;
+import game.actions.compact.CPush;
+import game.board.compact.BoardCompact;
+
+// Checks solver plans by playing them with the game's own rules (BoardCompact, CMove / CPush),
+// independently of the BoardCustom the solvers search over.
+public class SolutionReplay {
+
+    /**
+     * Whether every step of 'actions' is a legal move or push from 'board' on and the last one solves the level.
+     * 'board' itself is not changed.
+     */
+    public static boolean solves(BoardCompact board, List<TAction> actions) {
+        BoardCompact replay = board.clone();
+        for (TAction action : actions) {
+            for (EDirection direction : action.getDirections()) {
+                CMove move = CMove.getAction(direction);
+                CPush push = CPush.getAction(direction);
+                if (move.isPossible(replay)) move.perform(replay);
+                else if (push.isPossible(replay)) push.perform(replay);
+                else return false;
+            }
+        }
+        return replay.isVictory();
+    }
+
+    /**
+     * Throws an Error naming 'what' unless 'actions' {@link #solves(BoardCompact, List)} 'board'.
+     */
+    public static void check(BoardCompact board, List<TAction> actions, String what) {
+        if (!solves(board, actions)) throw new Error("[FAILED TEST] " + what + ": the plan does not solve the level");
+    }
+}
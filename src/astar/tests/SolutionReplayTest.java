@@ -0,0 +1,69 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.List;
+
+import astar.AStar;
+import astar.AStarProblem;
+import astar.BidirectionalSearch;
+import astar.BoardCustom;
+import astar.HDAStar;
+import astar.IDAStar;
+import astar.actions.TAction;
+import astar.search.Solution;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+
+// Solves Minicosmos levels with the solver configurations the agents use and plays every plan on
+// BoardCompact; each must be legal and end with all boxes on targets.
+public class SolutionReplayTest {
+
+    private static final int LEVELS = 10;
+    private static final long TIMEOUT = 10000;
+
+    public static void main(String[] args) {
+        File levelFile = new File("./levels/Aymeric_du_Peloux_1_Minicosmos.sok");
+        for (int level = 1; level <= LEVELS; level++) {
+            BoardCompact board = Board.fromFileSok(levelFile, level).makeBoardCompact();
+
+            AStarProblem ida = problem(board);
+            check(board, level, "IDA*", IDAStar.search(ida, 20), ida);
+
+            check(board, level, "HDA*", HDAStar.search(problem(board), 2, TIMEOUT), null);
+
+            AStarProblem anytime = problem(board);
+            check(board, level, "ARA*", AStar.searchAnytime(anytime, 3.0, 0.5, TIMEOUT, (s, bound) -> {}), anytime);
+
+            AStarProblem corrals = problem(board);
+            corrals.setPICorralPruning(true);
+            check(board, level, "HDA* with PI-corral pruning", HDAStar.search(corrals, 1, TIMEOUT), null);
+
+            AStarProblem macros = problem(board);
+            macros.setTunnelMacros(true);
+            macros.setGoalRoomMacros(true);
+            check(board, level, "HDA* with macros", HDAStar.search(macros, 1, TIMEOUT), null);
+
+            AStarProblem packing = problem(board);
+            packing.setGoalRoomMacros(true);
+            packing.setPackingPenalty(true);
+            check(board, level, "ARA* with packing penalty", AStar.searchAnytime(packing, 3.0, 0.5, TIMEOUT, (s, bound) -> {}), packing);
+
+            check(board, level, "Bidirectional", BidirectionalSearch.search(problem(board), TIMEOUT), null);
+        }
+        System.out.println("Solution replay test successful!");
+    }
+
+    // push-optimal problem over canonical states, no macros or pruning
+    private static AStarProblem problem(BoardCompact board) {
+        return new AStarProblem(new BoardCustom(board), board, true);
+    }
+
+    // 'playable' turns the actions into playable ones if the search does not do it itself
+    private static void check(BoardCompact board, int level, String solver, Solution<BoardCustom, TAction> solution, AStarProblem playable) {
+        String what = solver + " on Minicosmos level " + level;
+        if (solution == null) throw new Error("[FAILED TEST] " + what + ": no solution");
+        List<TAction> actions = playable == null ? solution.actions : playable.toPlayable(solution.actions);
+        SolutionReplay.check(board, actions, what);
+        System.out.println(what + " solved in " + (long) solution.pathCost + " pushes");
+    }
+}
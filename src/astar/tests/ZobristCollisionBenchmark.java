@@ -0,0 +1,110 @@
+package astar.tests;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import astar.BoardCustom;
+import astar.actions.TAction;
+import astar.actions.TMove;
+import astar.actions.TPush;
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+import utils.SokReader;
+import utils.TextLevelS4JL;
+
+// Counts Zobrist key collisions between distinct states over every level in levels/.
+// For each level, states are enumerated breadth-first over single moves and pushes (up to a budget)
+// with exact equality, and every pair of distinct states sharing a key is counted, both for the low
+// 32 bits of the key (what the old int keys gave us) and for the full 64 bits.
+//
+// usage: ZobristCollisionBenchmark [states-per-level] [level-directory]
+public class ZobristCollisionBenchmark {
+
+    public static void main(String[] args) {
+        int budget = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        File dir = new File(args.length > 1 ? args[1] : "levels");
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".sok"));
+        if (files == null) {
+            System.out.printf("can't find level directory %s\n", dir.getAbsolutePath());
+            return;
+        }
+        Arrays.sort(files);
+
+        long levels = 0, states = 0, collisions32 = 0, collisions64 = 0;
+        long startMillis = System.currentTimeMillis();
+
+        for (File file : files) {
+            long fileStates = 0, fileCollisions32 = 0, fileCollisions64 = 0;
+            SokReader reader = new SokReader(file);
+            while (true) {
+                BoardCompact compact;
+                try {
+                    TextLevelS4JL level = reader.readNext();
+                    if (level == null) break;
+                    compact = Board.fromTextLevel(level).makeBoardCompact();
+                } catch (RuntimeException e) {
+                    continue; // malformed or unsupported level
+                }
+                long[] result = enumerate(compact, budget);
+                fileStates += result[0];
+                fileCollisions32 += result[1];
+                fileCollisions64 += result[2];
+                levels++;
+            }
+            reader.close();
+
+            System.out.printf("%-50s states %8d   32-bit collisions %5d   64-bit collisions %d\n",
+                              file.getName(), fileStates, fileCollisions32, fileCollisions64);
+            states += fileStates;
+            collisions32 += fileCollisions32;
+            collisions64 += fileCollisions64;
+        }
+
+        System.out.println();
+        System.out.printf("levels: %d, distinct states: %d, time: %.1f s\n", levels, states, (System.currentTimeMillis() - startMillis) / 1000.0);
+        System.out.printf("32-bit key collisions: %d (%.2e per state)\n", collisions32, (double) collisions32 / states);
+        System.out.printf("64-bit key collisions: %d (%.2e per state)\n", collisions64, (double) collisions64 / states);
+    }
+
+    // Returns {distinct states, 32-bit collisions, 64-bit collisions}
+    private static long[] enumerate(BoardCompact compact, int budget) {
+        BoardCustom start = new BoardCustom(compact);
+
+        Set<BoardCustom> visited = new HashSet<>();
+        Map<Integer, Integer> keys32 = new HashMap<>();
+        Map<Long, Integer> keys64 = new HashMap<>();
+        long collisions32 = 0, collisions64 = 0;
+
+        Queue<BoardCustom> queue = new ArrayDeque<>();
+        queue.add(start);
+        visited.add(start);
+
+        while (!queue.isEmpty() && visited.size() < budget) {
+            BoardCustom curr = queue.poll();
+            for (EDirection dir : EDirection.arrows()) {
+                TAction action = TMove.getAction(dir);
+                if (!action.isPossible(curr)) action = TPush.getAction(dir);
+                if (!action.isPossible(curr)) continue;
+
+                BoardCustom next = curr.clone();
+                action.perform(next);
+                if (!visited.add(next)) continue;
+                queue.add(next);
+
+                // every earlier state with the same key is a distinct state (visited uses exact equality)
+                long key = next.getHash();
+                collisions32 += keys32.merge((int) key, 1, Integer::sum) - 1;
+                collisions64 += keys64.merge(key, 1, Integer::sum) - 1;
+            }
+        }
+
+        return new long[] { visited.size(), collisions32, collisions64 };
+    }
+}
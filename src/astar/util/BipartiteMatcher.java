@@ -1,109 +1,152 @@
 package astar.util;
 
-import java.util.*;
+import java.util.Arrays;
 
-// Used for bipartite deadlock detection
+// Maximum bipartite matching of rows to columns, used for bipartite deadlock detection.
+// A row's adjacency is a bitset of columns (long words), read in place from the caller's array, so
+// setting up a matching copies nothing. Augmenting paths are searched depth-first with a bitset of
+// visited columns. After one row's adjacency changes, canReassign() answers whether the matching can
+// be repaired with a single augmenting path, without touching the current matching.
 public class BipartiteMatcher {
-    private final List<List<Integer>> edges;
-    private final Map<Integer, Integer> pairV = new HashMap<>();
-    private final int[] pairU;
-    private int[] dist;
+    private final int rows;
+    private final int columns;
+    private final int words;
 
-    public BipartiteMatcher(int n, List<Integer> V, List<List<Integer>> edges) {
-        this.edges = edges;
-        this.pairU = new int[n]; // Initialize pairings for U vertices
-        Arrays.fill(pairU, -1); // Initialize all U vertices as unmatched
+    private final long[][] adjacency; // per row, the array and offset its bitset is read from
+    private final int[] offsets;
+    private final int[] rowOf;        // matched row per column, -1 = free
+    private final int[] columnOf;     // matched column per row, -1 = free
+    private final long[] visited;
 
-        V.forEach(v -> pairV.put(v, -1)); // Initialize pairings for V vertices as unmatched
+    // the row being reassigned and its new adjacency
+    private int changedRow = -1;
+    private long[] changedAdjacency;
+    private int changedOffset;
+
+    public BipartiteMatcher(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.words = (columns + 63) >>> 6;
+        this.adjacency = new long[rows][];
+        this.offsets = new int[rows];
+        this.rowOf = new int[columns];
+        this.columnOf = new int[rows];
+        this.visited = new long[words];
     }
 
-    private boolean bfs() {
-        Queue<Integer> queue = new LinkedList<>();
-        dist = new int[pairU.length];
-        Arrays.fill(dist, Integer.MAX_VALUE); // Initialize distances as infinite
+    // long words per row bitset
+    public int words() {
+        return words;
+    }
 
-        for (int u = 0; u < pairU.length; u++) {
-            if (pairU[u] == -1) {
-                dist[u] = 0;
-                queue.add(u);
-            }
+    /**
+     * Sets the columns adjacent to 'row' to the bitset at masks[offset .. offset + words()); the array is not copied.
+     * @param row
+     * @param masks
+     * @param offset
+     */
+    public void setRow(int row, long[] masks, int offset) {
+        adjacency[row] = masks;
+        offsets[row] = offset;
+    }
+
+    // Matches from scratch; returns the matching size
+    public int match() {
+        Arrays.fill(rowOf, -1);
+        Arrays.fill(columnOf, -1);
+        int size = 0;
+        for (int row = 0; row < rows; row++) {
+            Arrays.fill(visited, 0);
+            if (augment(row)) size++;
         }
+        return size;
+    }
 
-        boolean isPath = false;
-        while (!queue.isEmpty()) {
-            int u = queue.poll();
-            for (int v : edges.get(u)) {
-                if (!pairV.containsKey(v) || pairV.get(v) == -1) {
-                    isPath = true;
-                } else if (dist[pairV.get(v)] == Integer.MAX_VALUE) {
-                    dist[pairV.get(v)] = dist[u] + 1;
-                    queue.add(pairV.get(v));
-                }
-            }
+    public int getColumn(int row) {
+        return columnOf[row];
+    }
+
+    /**
+     * Whether a matched 'row' stays matched if its adjacency becomes masks[offset ..], the other rows keeping theirs.
+     * Searches one augmenting path from the row with its current column freed; the matching is left as it is.
+     * @param row
+     * @param masks
+     * @param offset
+     * @return
+     */
+    public boolean canReassign(int row, long[] masks, int offset) {
+        int column = columnOf[row];
+        if (column != -1 && (masks[offset + (column >>> 6)] & (1L << column)) != 0) return true;
+
+        changedRow = row;
+        changedAdjacency = masks;
+        changedOffset = offset;
+        Arrays.fill(visited, 0);
+        try {
+            return findPath(row, column);
+        } finally {
+            changedRow = -1;
+            changedAdjacency = null;
         }
-        return isPath;
     }
 
-    private boolean dfs(int u) {
-        for (int v : edges.get(u)) {
-            if (!pairV.containsKey(v) || pairV.get(v) == -1 || (dist[pairV.get(v)] == dist[u] + 1 && dfs(pairV.get(v)))) {
-                pairV.put(v, u);
-                pairU[u] = v;
-                return true;
+    // Whether an alternating path from 'row' ends in a free column or in 'freed'
+    private boolean findPath(int row, int freed) {
+        long[] masks = row == changedRow ? changedAdjacency : adjacency[row];
+        int offset = row == changedRow ? changedOffset : offsets[row];
+        for (int w = 0; w < words; w++) {
+            long candidates = masks[offset + w] & ~visited[w];
+            while (candidates != 0) {
+                int column = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                visited[w] |= 1L << column;
+                if (column == freed || rowOf[column] == -1) return true;
+                if (findPath(rowOf[column], freed)) return true;
             }
         }
         return false;
     }
 
-    public int hopcroftKarp() {
-        int matching = 0;
-        while (bfs()) {
-            for (int u = 0; u < pairU.length; u++) {
-                if (pairU[u] == -1 && dfs(u)) {
-                    matching++;
+    // Kuhn's augmenting path from an unmatched 'row', applied to the matching
+    private boolean augment(int row) {
+        long[] masks = adjacency[row];
+        int offset = offsets[row];
+        for (int w = 0; w < words; w++) {
+            long candidates = masks[offset + w] & ~visited[w];
+            while (candidates != 0) {
+                int column = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                visited[w] |= 1L << column;
+                if (rowOf[column] == -1 || augment(rowOf[column])) {
+                    rowOf[column] = row;
+                    columnOf[row] = column;
+                    return true;
                 }
             }
         }
-        return matching;
+        return false;
     }
 
     public static void main(String[] args) {
         // Test Case 1: Perfect Matching Exists
-        List<Integer> V1 = Arrays.asList(1, 2, 3, 4, 5);
-        List<List<Integer>> edges1 = Arrays.asList(
-            Arrays.asList(1, 2),    
-            Arrays.asList(2, 5),
-            Arrays.asList(3),
-            Arrays.asList(5),
-            Arrays.asList(3, 4)
-        );
-    
-        BipartiteMatcher bm1 = new BipartiteMatcher(edges1.size(), V1, edges1);
-        int matchingSize1 = bm1.hopcroftKarp();
+        long[] masks1 = { 0b00011, 0b10010, 0b00100, 0b10000, 0b01100 };
+        BipartiteMatcher bm1 = new BipartiteMatcher(masks1.length, 5);
+        for (int row = 0; row < masks1.length; row++) bm1.setRow(row, masks1, row);
+        int matchingSize1 = bm1.match();
         System.out.println("Test Case 1 - Maximum Matching Size: " + matchingSize1);
-    
-        if (edges1.size() == V1.size() && matchingSize1 == edges1.size()) {
-            System.out.println("Test Case 1: Perfect matching exists.");
-        } else {
-            System.out.println("Test Case 1: Perfect matching does not exist.");
-        }
-
-        List<List<Integer>> edges2 = Arrays.asList(
-            Arrays.asList(1, 2),    
-            Arrays.asList(2, 5),
-            Arrays.asList(3),
-            Arrays.asList(4),
-            Arrays.asList(3, 4)
-        );
+        System.out.println(matchingSize1 == masks1.length ? "Test Case 1: Perfect matching exists." : "Test Case 1: Perfect matching does not exist.");
 
-        BipartiteMatcher bm2 = new BipartiteMatcher(edges2.size(), V1, edges2);
-        int matchingSize2 = bm2.hopcroftKarp();
+        // Test Case 2: rows 2, 3 and 4 compete for columns 2 and 3
+        long[] masks2 = { 0b00011, 0b10010, 0b00100, 0b01000, 0b01100 };
+        BipartiteMatcher bm2 = new BipartiteMatcher(masks2.length, 5);
+        for (int row = 0; row < masks2.length; row++) bm2.setRow(row, masks2, row);
+        int matchingSize2 = bm2.match();
         System.out.println("Test Case 2 - Maximum Matching Size: " + matchingSize2);
-    
-        if (edges2.size() == V1.size() && matchingSize2 == edges2.size()) {
-            System.out.println("Test Case 2: Perfect matching exists.");
-        } else {
-            System.out.println("Test Case 2: Perfect matching does not exist.");
-        }
+        System.out.println(matchingSize2 == masks2.length ? "Test Case 2: Perfect matching exists." : "Test Case 2: Perfect matching does not exist.");
+
+        // Test Case 3: row 3 of case 1 (matched to column 4) changes its adjacency
+        long[] changed = { 0b01000, 0b00001 };
+        System.out.println("Test Case 3 - Reassign to {3}: " + bm1.canReassign(3, changed, 0) + " (expected false)");
+        System.out.println("Test Case 3 - Reassign to {0}: " + bm1.canReassign(3, changed, 1) + " (expected true)");
     }
 }
@@ -0,0 +1,71 @@
+package astar.util;
+
+import java.util.Arrays;
+
+// Priority queue of int items with small non-negative int priorities (one LIFO bucket per priority).
+// A* costs are whole numbers, so this replaces PriorityQueue<Node> with O(1) add and amortized O(1) poll.
+public class BucketQueue {
+    private int[][] buckets;
+    private int[] sizes;
+    private int min; // no non-empty bucket is below this index
+    private int size;
+
+    public BucketQueue() {
+        this(256);
+    }
+
+    public BucketQueue(int initialPriorities) {
+        buckets = new int[Math.max(1, initialPriorities)][];
+        sizes = new int[buckets.length];
+        min = buckets.length;
+    }
+
+    public void add(int item, int priority) {
+        if (priority >= buckets.length) {
+            int length = Math.max(priority + 1, buckets.length << 1);
+            buckets = Arrays.copyOf(buckets, length);
+            sizes = Arrays.copyOf(sizes, length);
+        }
+        int[] bucket = buckets[priority];
+        if (bucket == null) {
+            bucket = buckets[priority] = new int[64];
+        } else if (sizes[priority] == bucket.length) {
+            bucket = buckets[priority] = Arrays.copyOf(bucket, bucket.length << 1);
+        }
+        bucket[sizes[priority]++] = item;
+        if (priority < min) min = priority;
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Priority of the item that will be returned by the next poll(); the queue must not be empty
+    public int peekPriority() {
+        while (sizes[min] == 0) min++;
+        return min;
+    }
+
+    // Item the next poll() returns, without removing it; the queue must not be empty
+    public int peek() {
+        int priority = peekPriority();
+        return buckets[priority][sizes[priority] - 1];
+    }
+
+    public int poll() {
+        int priority = peekPriority();
+        size--;
+        return buckets[priority][--sizes[priority]];
+    }
+
+    public void clear() {
+        Arrays.fill(sizes, 0);
+        min = buckets.length;
+        size = 0;
+    }
+}
@@ -0,0 +1,110 @@
+package astar.util;
+
+import java.util.Arrays;
+
+// Open-addressing (linear probing) map from long keys to non-negative int values.
+// Used as the A* transposition table: no boxing and no entry objects, just two parallel arrays.
+public class LongIntHashMap {
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values; // NO_VALUE marks an empty slot
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(1 << 16);
+    }
+
+    public LongIntHashMap(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        // Zobrist keys are already random, the multiply just spreads the low bits
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    // Returns the value stored for the key or NO_VALUE
+    public int get(long key) {
+        int i = slot(key);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    // Decides whether a stored value is the one looked for, when distinct entries may share a key
+    public interface ValueMatcher {
+        boolean matches(int value);
+    }
+
+    // Returns the first value stored under the key that the matcher accepts, or NO_VALUE
+    public int get(long key, ValueMatcher matcher) {
+        int i = slot(key);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key && matcher.matches(values[i])) return values[i];
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    // Inserts a new entry without looking for an existing one under the same key
+    public void add(long key, int value) {
+        int i = slot(key);
+        while (values[i] != NO_VALUE) i = (i + 1) & mask;
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) rehash();
+    }
+
+    // Inserts or overwrites the value for the key
+    public void put(long key, int value) {
+        int i = slot(key);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) rehash();
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == NO_VALUE) continue;
+            int j = slot(oldKeys[i]);
+            while (values[j] != NO_VALUE) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, NO_VALUE);
+        size = 0;
+    }
+}
@@ -4,7 +4,13 @@ import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 
 public interface IAgent {
-    public void init(boolean optimal, boolean verbose);
+    /**
+     * Called before every level.
+     * @param optimal whether move-optimal solutions are required
+     * @param verbose
+     * @param timeoutMillis time the agent has to solve the level; non-positive number == no timeout
+     */
+    public void init(boolean optimal, boolean verbose, long timeoutMillis);
 
 	/**
 	 * Agent got into a new level.
@@ -22,6 +28,19 @@ public interface IAgent {
 	 * @return
 	 */
 	public EDirection act();
+
+	/**
+	 * Like {@link #act()}, but waits until the agent has an action.
+	 * Agents that plan on a thread of their own should block here instead of returning null, so the caller
+	 * neither spins nor polls; the default just asks {@link #act()} once. Such agents may stream their plan:
+	 * every move they are sure of is returned as soon as it is known, not once the whole plan is.
+	 * @param waitMillis how long to wait at most; non-positive number == until there is an action
+	 * @return the action, or null if there is none yet
+	 * @throws InterruptedException
+	 */
+	public default EDirection act(long waitMillis) throws InterruptedException {
+		return act();
+	}
 	
 	/**
 	 * Agent managed to finish the level.
@@ -83,9 +83,10 @@ public class SokobanSim implements ISokobanGame, Runnable {
 			while (shouldRun && !Thread.interrupted()) {
 
 				// TIMEOUT?
+				long timeLeftMillis = 0;
 				if (config.timeoutMillis > 0) {
 					long now = System.currentTimeMillis();
-					long timeLeftMillis = config.timeoutMillis - (now - startTime);
+					timeLeftMillis = config.timeoutMillis - (now - startTime);
 					if (timeLeftMillis <= 0) {						
 						onTimeout();
 						return;
@@ -108,8 +109,13 @@ public class SokobanSim implements ISokobanGame, Runnable {
 					observe = false;
 				}
 									
-				// GET AGENT ACTION
-				EDirection whereToMove = agent.act();
+				// GET AGENT ACTION, blocks while the agent thinks (until the time is up)
+				EDirection whereToMove;
+				try {
+					whereToMove = agent.act(timeLeftMillis);
+				} catch (InterruptedException e) {
+					return; // stopGame()
+				}
 				
 				if (whereToMove == null) continue;
                 
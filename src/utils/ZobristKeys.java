@@ -4,8 +4,10 @@ import astar.BoardCustom;
 import java.util.Random;
 
 public class ZobristKeys {
-    public static int[][] playerKEYS;
-    public static int[][] boxKEYS;
+    // 64-bit keys; with 32-bit keys distinct states collide within a few hundred thousand nodes
+    // Indexed by position (BoardCustom.getPacked)
+    public static long[] playerKEYS;
+    public static long[] boxKEYS;
 
     static {
         initializeKeys();
@@ -14,13 +16,12 @@ public class ZobristKeys {
     public static void initializeKeys() {
         Random random = new Random(42);
 
-        playerKEYS = new int[BoardCustom.width][BoardCustom.height];
-        boxKEYS = new int[BoardCustom.width][BoardCustom.height];
-        for (int i = 0; i < BoardCustom.width; i++) {
-            for (int j = 0; j < BoardCustom.height; j++){
-                playerKEYS[i][j] = random.nextInt();
-                boxKEYS[i][j] = random.nextInt();
-            }
+        int size = BoardCustom.width * BoardCustom.height;
+        playerKEYS = new long[size];
+        boxKEYS = new long[size];
+        for (int i = 0; i < size; i++) {
+            playerKEYS[i] = random.nextLong();
+            boxKEYS[i] = random.nextLong();
         }
     }
 }